@@ -51,7 +51,7 @@ public class SecurityConfig {
                 
                 .requestMatchers("/wishlist/**").hasRole("USER")
                 
-                .requestMatchers("/admin/**", "/products/admin/**", "/users/admin/**", "/admin/categories/**").hasRole("ADMIN")
+                .requestMatchers("/admin/**", "/products/admin/**", "/users/admin/**", "/admin/categories/**", "/actuator/**").hasRole("ADMIN")
                 
                 .requestMatchers("/user/**", "/profile/**", "/users/profile/**").hasRole("USER")
                 
@@ -0,0 +1,128 @@
+package com.stefan.ecommerce.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stefan.ecommerce.services.CatalogVersion;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+import org.springframework.web.servlet.View;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rendered HTML of the catalog and category page bodies. Keys carry the catalog version,
+ * so a product or category write makes every older entry unreachable; those age out by size.
+ * The navigation bar and CSRF token are rendered per request around the cached body.
+ */
+@Component
+public class CatalogFragmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogFragmentCache.class);
+
+    private final ThymeleafViewResolver viewResolver;
+    private final CatalogVersion catalogVersion;
+    private final Cache<String, String> fragments;
+
+    public CatalogFragmentCache(ThymeleafViewResolver viewResolver, CatalogVersion catalogVersion,
+                                MeterRegistry meterRegistry,
+                                @Value("${ecommerce.fragment-cache.max-chars:16000000}") long maxChars) {
+        this.viewResolver = viewResolver;
+        this.catalogVersion = catalogVersion;
+        this.fragments = Caffeine.newBuilder()
+                .maximumWeight(maxChars)
+                .<String, String>weigher((key, html) -> html.length())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, fragments, "catalogFragments");
+    }
+
+    /**
+     * Cache key for a page body. Signed-in viewers get wishlist buttons, nothing else in the
+     * body depends on who is asking.
+     */
+    public String key(String template, Authentication authentication, Object... parameters) {
+        boolean signedIn = authentication != null && authentication.isAuthenticated()
+                && !authentication.getName().equals("anonymousUser");
+        return Stream.concat(Stream.of(template, catalogVersion.current(), signedIn), Stream.of(parameters))
+                .map(String::valueOf)
+                .collect(Collectors.joining("|"));
+    }
+
+    public String get(String key) {
+        return fragments.getIfPresent(key);
+    }
+
+    /**
+     * Render one fragment of a template with the page's model and cache the HTML.
+     * Returns null if rendering fails, so the page falls back to rendering the body inline.
+     */
+    public String render(String key, String template, String fragment, Model model,
+                         HttpServletRequest request, HttpServletResponse response) {
+        try {
+            View view = viewResolver.resolveViewName(template + " :: " + fragment, request.getLocale());
+            CapturingResponse capture = new CapturingResponse(response);
+            view.render(model.asMap(), request, capture);
+            String html = capture.body();
+            fragments.put(key, html);
+            return html;
+        } catch (Exception e) {
+            logger.warn("Could not render fragment {} of {}", fragment, template, e);
+            return null;
+        }
+    }
+
+    /**
+     * Collects the rendered fragment instead of writing it to the client
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+
+        private final StringWriter body = new StringWriter();
+        private final PrintWriter writer = new PrintWriter(body);
+
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            return writer;
+        }
+
+        // Headers belong to the enclosing page
+        @Override
+        public void setContentType(String type) {
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+        }
+
+        @Override
+        public void setLocale(Locale locale) {
+        }
+
+        @Override
+        public void flushBuffer() {
+            writer.flush();
+        }
+
+        String body() {
+            writer.flush();
+            return body.toString();
+        }
+    }
+}
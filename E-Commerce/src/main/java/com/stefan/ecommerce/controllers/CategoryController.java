@@ -7,6 +7,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import jakarta.validation.Valid;
@@ -24,8 +25,14 @@ public class CategoryController {
     }
 
     @GetMapping("/categories")
-    public String showAllCategories(Model model) {
-        List<Category> categories = categoryService.findAllActiveCategories();
+    public String showAllCategories(Model model, ServletWebRequest webRequest) {
+        if (ConditionalGet.checkNotModified(webRequest, categoryService.getActiveCategoriesVersion())) {
+            return null;
+        }
+
+        // Product counts are stored on the categories, so no products are loaded; they change with
+        // every product write, so this page reads the rows rather than the category snapshot
+        List<Category> categories = categoryService.findAllActiveCategoriesOrdered();
         model.addAttribute("categories", categories);
         return "categories/browse";
     }
@@ -33,16 +40,20 @@ public class CategoryController {
     @GetMapping("/admin/categories/create")
     public String showCreateCategoryForm(Model model) {
         model.addAttribute("category", new Category());
+        model.addAttribute("parentCategories", categoryService.findAllCategoriesOrdered());
         return "admin/categories/create";
     }
 
     @PostMapping("/admin/categories/create")
     public String createCategory(@Valid @ModelAttribute("category") Category category,
                                  BindingResult bindingResult,
+                                 @RequestParam(required = false) Long parentId,
                                  Model model,
                                  RedirectAttributes redirectAttributes) {
 
         if (bindingResult.hasErrors()) {
+            model.addAttribute("parentCategories", categoryService.findAllCategoriesOrdered());
+            model.addAttribute("parentId", parentId);
             return "admin/categories/create";
         }
 
@@ -50,7 +61,8 @@ public class CategoryController {
             Category createdCategory = categoryService.createCategory(
                     category.getName(),
                     category.getDescription(),
-                    category.getImageUrl()
+                    category.getImageUrl(),
+                    parentId
             );
 
             redirectAttributes.addFlashAttribute("successMessage",
@@ -59,6 +71,8 @@ public class CategoryController {
 
         } catch (IllegalArgumentException e) {
             model.addAttribute("errorMessage", e.getMessage());
+            model.addAttribute("parentCategories", categoryService.findAllCategoriesOrdered());
+            model.addAttribute("parentId", parentId);
             return "admin/categories/create";
         }
     }
@@ -0,0 +1,36 @@
+package com.stefan.ecommerce.controllers;
+
+import com.stefan.ecommerce.dto.ContentVersion;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP validators for server-rendered pages. Every page embeds the session's CSRF token and
+ * a per-user navigation bar, so the ETag covers the session as well as the content version,
+ * and responses may only be kept by the browser (private), which must revalidate (no-cache).
+ */
+final class ConditionalGet {
+
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Set the validators on the response; true if the client's copy is current and a 304 was sent
+     */
+    static boolean checkNotModified(ServletWebRequest webRequest, ContentVersion version) {
+        // The page renders the CSRF token, which creates the session anyway
+        String session = webRequest.getRequest().getSession().getId();
+        String etag = DigestUtils.md5DigestAsHex(
+                (version.count() + "|" + version.lastModified() + "|" + session).getBytes(StandardCharsets.UTF_8));
+
+        // Also keeps Spring Security from marking the page no-store
+        webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        return webRequest.checkNotModified(etag, version.lastModifiedMillis());
+    }
+}
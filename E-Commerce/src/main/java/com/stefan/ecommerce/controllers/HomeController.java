@@ -1,5 +1,6 @@
 package com.stefan.ecommerce.controllers;
 
+import com.stefan.ecommerce.dto.ProductSnapshot;
 import com.stefan.ecommerce.entities.Product;
 import com.stefan.ecommerce.entities.Category;
 import com.stefan.ecommerce.services.ProductService;
@@ -8,6 +9,8 @@ import com.stefan.ecommerce.services.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
@@ -34,7 +37,7 @@ public class HomeController {
     public String home(Model model) {
         logger.info("HomeController: home() called");
         // Featured products (recently added)
-        List<Product> featuredProducts;
+        List<ProductSnapshot> featuredProducts;
         try {
             featuredProducts = productService.getFeaturedProducts(8);
         } catch (Exception e) {
@@ -64,10 +67,7 @@ public class HomeController {
 
     @GetMapping("/search")
     public String globalSearch(@RequestParam("q") String searchTerm, Model model) {
-        List<Product> products = productService.searchProducts(searchTerm);
-        if (products.size() > 10) {
-            products = products.subList(0, 10);
-        }
+        Page<Product> products = productService.searchProducts(searchTerm, PageRequest.of(0, 10));
 
         List<Category> categories = categoryService.searchCategories(searchTerm);
         if (categories.size() > 5) {
@@ -75,9 +75,9 @@ public class HomeController {
         }
 
         model.addAttribute("searchTerm", searchTerm);
-        model.addAttribute("products", products);
+        model.addAttribute("products", products.getContent());
         model.addAttribute("categories", categories);
-        model.addAttribute("totalProductResults", productService.searchProducts(searchTerm).size());
+        model.addAttribute("totalProductResults", products.getTotalElements());
         model.addAttribute("totalCategoryResults", categoryService.searchCategories(searchTerm).size());
 
         return "search/global-results";
@@ -102,7 +102,7 @@ public class HomeController {
         model.addAttribute("enabledUsers", enabledUsers);
         model.addAttribute("disabledUsers", totalUsers - enabledUsers);
 
-        List<Product> recentProducts = productService.getFeaturedProducts(5);
+        List<ProductSnapshot> recentProducts = productService.getFeaturedProducts(5);
         model.addAttribute("recentProducts", recentProducts);
 
         List<Category> recentCategories = categoryService.getRecentCategories(5);
@@ -49,7 +49,7 @@ public class OrderController {
 
     @GetMapping("/{id}")
     public String orderDetails(@PathVariable Long id, Model model) {
-        Optional<Order> orderOpt = orderService.getOrderById(id);
+        Optional<Order> orderOpt = orderService.getOrderDetails(id);
         
         if (orderOpt.isPresent()) {
             Order order = orderOpt.get();
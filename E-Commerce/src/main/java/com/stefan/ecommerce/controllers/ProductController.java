@@ -1,31 +1,62 @@
 package com.stefan.ecommerce.controllers;
 
+import com.stefan.ecommerce.dto.CatalogFileFormat;
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.CatalogPage;
+import com.stefan.ecommerce.dto.CategoryView;
+import com.stefan.ecommerce.dto.ContentVersion;
+import com.stefan.ecommerce.dto.CursorPage;
+import com.stefan.ecommerce.dto.FacetCounts;
+import com.stefan.ecommerce.dto.ImportReport;
+import com.stefan.ecommerce.dto.PriceRange;
+import com.stefan.ecommerce.dto.ProductCardView;
+import com.stefan.ecommerce.dto.ProductDetailView;
+import com.stefan.ecommerce.dto.ProductQuery;
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.dto.Suggestion;
 import com.stefan.ecommerce.entities.Product;
 import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.services.ProductExportService;
+import com.stefan.ecommerce.services.ProductImportService;
 import com.stefan.ecommerce.services.ProductService;
+import com.stefan.ecommerce.services.ProductSuggestIndex;
 import com.stefan.ecommerce.services.CategoryService;
 import com.stefan.ecommerce.services.WishlistService;
 import com.stefan.ecommerce.services.UserService;
 import com.stefan.ecommerce.entities.User;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.TreeSet;
 
 @Controller
 @RequestMapping("/products")
@@ -35,14 +66,24 @@ public class ProductController {
     private final CategoryService categoryService;
     private final WishlistService wishlistService;
     private final UserService userService;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final CatalogFragmentCache catalogFragmentCache;
+    private final ProductImportService productImportService;
+    private final ProductExportService productExportService;
 
     @Autowired
     public ProductController(ProductService productService, CategoryService categoryService, 
-                           WishlistService wishlistService, UserService userService) {
+                           WishlistService wishlistService, UserService userService,
+                           ProductSuggestIndex productSuggestIndex, CatalogFragmentCache catalogFragmentCache,
+                           ProductImportService productImportService, ProductExportService productExportService) {
         this.productService = productService;
         this.categoryService = categoryService;
         this.wishlistService = wishlistService;
         this.userService = userService;
+        this.productSuggestIndex = productSuggestIndex;
+        this.catalogFragmentCache = catalogFragmentCache;
+        this.productImportService = productImportService;
+        this.productExportService = productExportService;
     }
 
     @GetMapping
@@ -50,23 +91,82 @@ public class ProductController {
                                      @RequestParam(defaultValue = "12") int size,
                                      @RequestParam(defaultValue = "name") String sortBy,
                                      @RequestParam(defaultValue = "asc") String sortDir,
-                                     Model model) {
+                                     @RequestParam(required = false) Set<Long> category,
+                                     @RequestParam(defaultValue = "") String price,
+                                     @RequestParam(defaultValue = "false") boolean inStock,
+                                     @RequestParam(defaultValue = "") String q,
+                                     @RequestParam(required = false) BigDecimal minPrice,
+                                     @RequestParam(required = false) BigDecimal maxPrice,
+                                     @RequestParam(required = false) String cursor,
+                                     Model model,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) {
 
-        Sort.Direction direction = sortDir.equals("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
-        Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
-
-        Page<Product> productsPage = productService.findAllActiveProducts(pageable);
-        List<Category> categories = categoryService.findAllActiveCategories();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        CatalogFilter filter = new CatalogFilter(category, PriceRange.fromKey(price), inStock);
+        ProductQuery query = new ProductQuery(q, filter, minPrice, maxPrice);
+
+        // The page body is only evaluated (queries and template) when no rendering of it is cached
+        String fragmentKey = catalogFragmentCache.key("products/catalog", authentication, page, size, sortBy, sortDir,
+                new TreeSet<>(filter.categoryIds()), filter.priceRange(), inStock, query.searchTerm(), minPrice, maxPrice,
+                cursor != null, cursor);
+        String catalogContent = catalogFragmentCache.get(fragmentKey);
+        if (catalogContent == null) {
+            Sort.Direction direction = sortDir.equals("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+            List<CategoryView> categories = categoryService.findAllActiveCategories();
+
+            // Keyset mode (cursor parameter present) pages the unfiltered catalog without offsets or COUNT queries
+            boolean cursorMode = cursor != null && filter.isEmpty() && query.isFacetOnly();
+            if (cursorMode) {
+                CursorPage<ProductCardView> productsWindow = productService.findActiveProducts(cursor, size, sortBy, direction);
+                FacetCounts facets = productService.getCatalogFacets(filter);
+
+                model.addAttribute("products", productsWindow.content());
+                model.addAttribute("totalPages", 0);
+                model.addAttribute("totalProducts", facets.matching());
+                model.addAttribute("facets", facets);
+                model.addAttribute("nextCursor", productsWindow.nextCursor());
+            } else if (!query.isFacetOnly()) {
+                // A search term or typed price bounds go to the database as one criteria query
+                Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
+                Page<ProductCardView> productsPage = productService.findProducts(query, pageable);
+
+                model.addAttribute("products", productsPage.getContent());
+                model.addAttribute("totalPages", productsPage.getTotalPages());
+                model.addAttribute("totalProducts", productsPage.getTotalElements());
+                model.addAttribute("facets", productService.getCatalogFacets(filter));
+            } else {
+                Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
+                CatalogPage catalogPage = productService.findCatalogPage(filter, pageable);
+                Page<ProductCardView> productsPage = catalogPage.products();
+
+                model.addAttribute("products", productsPage.getContent());
+                model.addAttribute("totalPages", productsPage.getTotalPages());
+                model.addAttribute("totalProducts", productsPage.getTotalElements());
+                model.addAttribute("facets", catalogPage.facets());
+            }
 
-        model.addAttribute("products", productsPage.getContent());
-        model.addAttribute("categories", categories);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", productsPage.getTotalPages());
-        model.addAttribute("totalProducts", productsPage.getTotalElements());
-        model.addAttribute("sortBy", sortBy);
-        model.addAttribute("sortDir", sortDir);
+            model.addAttribute("categories", categories);
+            model.addAttribute("currentPage", page);
+            model.addAttribute("cursorMode", cursorMode);
+            model.addAttribute("cursor", cursor);
+            model.addAttribute("sortBy", sortBy);
+            model.addAttribute("sortDir", sortDir);
+            model.addAttribute("priceRanges", PriceRange.values());
+            model.addAttribute("selectedCategories", filter.categoryIds());
+            model.addAttribute("price", filter.priceRange() != null ? price : "");
+            model.addAttribute("inStock", inStock);
+            model.addAttribute("q", query.searchTerm() != null ? query.searchTerm() : "");
+            model.addAttribute("minPrice", minPrice);
+            model.addAttribute("maxPrice", maxPrice);
+            // Facet counts come from the in-memory index, which knows nothing of search terms or typed prices
+            model.addAttribute("facetCountsShown", query.isFacetOnly());
+
+            catalogContent = catalogFragmentCache.render(fragmentKey, "products/catalog", "catalogContent",
+                    model, request, response);
+        }
+        model.addAttribute("catalogContent", catalogContent);
 
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication != null && authentication.isAuthenticated() && 
             !authentication.getName().equals("anonymousUser")) {
             model.addAttribute("wishlistService", wishlistService);
@@ -83,8 +183,13 @@ public class ProductController {
     }
 
     @GetMapping("/{id}")
-    public String showProduct(@PathVariable("id") Long id, Model model) {
-        Optional<Product> productOpt = productService.findByIdWithCategories(id);
+    public String showProduct(@PathVariable("id") Long id, Model model, ServletWebRequest webRequest) {
+        Optional<ContentVersion> version = productService.getProductDetailVersion(id);
+        if (version.isPresent() && ConditionalGet.checkNotModified(webRequest, version.get())) {
+            return null;
+        }
+
+        Optional<ProductDetailView> productOpt = productService.getProductDetail(id);
 
         if (productOpt.isPresent()) {
             model.addAttribute("product", productOpt.get());
@@ -112,21 +217,71 @@ public class ProductController {
     public String showProductsByCategory(@PathVariable("categoryId") Long categoryId,
                                          @RequestParam(defaultValue = "0") int page,
                                          @RequestParam(defaultValue = "12") int size,
-                                         Model model) {
+                                         @RequestParam(defaultValue = "name") String sortBy,
+                                         @RequestParam(defaultValue = "asc") String sortDir,
+                                         @RequestParam(required = false) String cursor,
+                                         Model model,
+                                         HttpServletRequest request,
+                                         HttpServletResponse response,
+                                         ServletWebRequest webRequest) {
+
+        Optional<ContentVersion> version = categoryService.getCategoryPageVersion(categoryId);
+        if (version.isPresent() && ConditionalGet.checkNotModified(webRequest, version.get())) {
+            return null;
+        }
 
         Optional<Category> categoryOpt = categoryService.findById(categoryId);
 
         if (categoryOpt.isPresent()) {
-            Pageable pageable = PageRequest.of(page, size);
-            Page<Product> productsPage = productService.findByCategoryId(categoryId, pageable);
-
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             model.addAttribute("category", categoryOpt.get());
-            model.addAttribute("productsPage", productsPage);
-            model.addAttribute("currentPage", page);
-            model.addAttribute("totalPages", productsPage.getTotalPages());
-            model.addAttribute("totalProducts", productsPage.getTotalElements());
 
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            // Only the category lookup runs when the page body is cached; it also backs the 404 and the title
+            String fragmentKey = catalogFragmentCache.key("products/category", authentication, categoryId,
+                    page, size, sortBy, sortDir, cursor != null, cursor);
+            String categoryContent = catalogFragmentCache.get(fragmentKey);
+            if (categoryContent == null) {
+                Sort.Direction direction = sortDir.equals("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+                // A category with subcategories lists their products too, through the closure table
+                List<Category> subcategories = categoryService.findSubcategories(categoryId);
+                boolean subtree = !subcategories.isEmpty() || categoryService.hasSubcategories(categoryId);
+
+                if (cursor != null) {
+                    CursorPage<ProductCardView> productsWindow = subtree
+                            ? productService.findActiveProductsInCategorySubtree(categoryId, cursor, size, sortBy, direction)
+                            : productService.findActiveProductsByCategory(categoryId, cursor, size, sortBy, direction);
+
+                    model.addAttribute("products", productsWindow.content());
+                    model.addAttribute("totalPages", 0);
+                    model.addAttribute("totalProducts", subtree
+                            ? productService.getProductCountByCategorySubtree(categoryId)
+                            : productService.getProductCountByCategory(categoryId));
+                    model.addAttribute("nextCursor", productsWindow.nextCursor());
+                } else {
+                    Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
+                    Page<ProductCardView> productsPage = subtree
+                            ? productService.findByCategorySubtree(categoryId, pageable)
+                            : productService.findByCategoryId(categoryId, pageable);
+
+                    model.addAttribute("productsPage", productsPage);
+                    model.addAttribute("products", productsPage.getContent());
+                    model.addAttribute("totalPages", productsPage.getTotalPages());
+                    model.addAttribute("totalProducts", productsPage.getTotalElements());
+                }
+
+                model.addAttribute("currentPage", page);
+                model.addAttribute("cursorMode", cursor != null);
+                model.addAttribute("cursor", cursor);
+                model.addAttribute("sortBy", sortBy);
+                model.addAttribute("sortDir", sortDir);
+                model.addAttribute("ancestors", categoryService.findAncestors(categoryId));
+                model.addAttribute("subcategories", subcategories);
+
+                categoryContent = catalogFragmentCache.render(fragmentKey, "products/category", "categoryContent",
+                        model, request, response);
+            }
+            model.addAttribute("categoryContent", categoryContent);
+
             if (authentication != null && authentication.isAuthenticated() && 
                 !authentication.getName().equals("anonymousUser")) {
                 model.addAttribute("wishlistService", wishlistService);
@@ -145,17 +300,37 @@ public class ProductController {
         }
     }
 
+    // Served from memory without a transaction, it is called on every keystroke
+    @GetMapping("/suggest")
+    @ResponseBody
+    public List<Suggestion> suggest(@RequestParam("q") String query,
+                                    @RequestParam(defaultValue = "8") int limit) {
+        return productSuggestIndex.suggest(query, Math.min(limit, ProductSuggestIndex.MAX_SUGGESTIONS));
+    }
+
     @GetMapping("/search")
     public String searchProducts(@RequestParam("q") String searchTerm,
                                  @RequestParam(defaultValue = "0") int page,
                                  @RequestParam(defaultValue = "12") int size,
+                                 @RequestParam(defaultValue = "false") boolean fuzzy,
+                                 @RequestParam(required = false) String cursor,
                                  Model model) {
 
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Product> productsPage = productService.searchProducts(searchTerm, pageable);
+        if (cursor != null) {
+            CursorPage<Product> productsWindow = productService.searchProducts(searchTerm, cursor, size, fuzzy);
+            model.addAttribute("products", productsWindow.content());
+            model.addAttribute("nextCursor", productsWindow.nextCursor());
+        } else {
+            Pageable pageable = PageRequest.of(page, size);
+            Page<Product> productsPage = productService.searchProducts(searchTerm, pageable, fuzzy);
+            model.addAttribute("productsPage", productsPage);
+            model.addAttribute("products", productsPage.getContent());
+        }
 
         model.addAttribute("searchTerm", searchTerm);
-        model.addAttribute("productsPage", productsPage);
+        model.addAttribute("fuzzy", fuzzy);
+        model.addAttribute("cursorMode", cursor != null);
+        model.addAttribute("cursor", cursor);
         model.addAttribute("currentPage", page);
         model.addAttribute("categories", categoryService.findAllActiveCategories());
 
@@ -222,8 +397,7 @@ public class ProductController {
                                        Model model) {
 
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        List<Product> allProducts = productService.findAllProducts();
-
+        // Categories of the page's products come in one batch (hibernate.default_batch_fetch_size)
         Page<Product> productsPage = productService.findAllActiveProducts(pageable);
 
         model.addAttribute("productsPage", productsPage);
@@ -307,6 +481,42 @@ public class ProductController {
         return "redirect:/products/admin/list";
     }
 
+    @PostMapping("/admin/import")
+    public String importProducts(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
+        try (InputStream input = file.getInputStream()) {
+            ImportReport report = productImportService.importProducts(input,
+                    CatalogFileFormat.fromFilename(file.getOriginalFilename()));
+            redirectAttributes.addFlashAttribute("successMessage", String.format(
+                    "Imported %,d products in %.1f s (%,d rows/s).", report.imported(),
+                    report.elapsed().toMillis() / 1000.0, report.rowsPerSecond()));
+            if (report.rejected() > 0) {
+                redirectAttributes.addFlashAttribute("errorMessage", String.format("%,d rows rejected. %s",
+                        report.rejected(), String.join(" ", report.errors())));
+            }
+        } catch (IllegalArgumentException | IOException | DataAccessException e) {
+            redirectAttributes.addFlashAttribute("errorMessage", "Error importing products: " + e.getMessage());
+        }
+        return "redirect:/products/admin/list";
+    }
+
+    /**
+     * Download the active catalog; the body is streamed while the products are read
+     */
+    @GetMapping("/admin/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "csv") String format) {
+        CatalogFileFormat fileFormat;
+        try {
+            fileFormat = CatalogFileFormat.fromName(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        String filename = "products-" + LocalDate.now() + "." + fileFormat.getExtension();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(output -> productExportService.exportActiveProducts(fileFormat, output));
+    }
+
     @PostMapping("/admin/{id}/activate")
     public String activateProduct(@PathVariable("id") Long id, RedirectAttributes redirectAttributes) {
         try {
@@ -331,7 +541,7 @@ public class ProductController {
 
     @GetMapping("/featured")
     public String showFeaturedProducts(Model model) {
-        List<Product> featuredProducts = productService.getFeaturedProducts(20);
+        List<ProductSnapshot> featuredProducts = productService.getFeaturedProducts(20);
         model.addAttribute("products", featuredProducts);
         model.addAttribute("title", "Featured Products");
         return "products/catalog";
@@ -339,7 +549,7 @@ public class ProductController {
 
     @GetMapping("/cheapest")
     public String showBestDeals(Model model) {
-        List<Product> cheapestProducts = productService.getProductsSortedByPriceAsc(20);
+        List<ProductSnapshot> cheapestProducts = productService.getProductsSortedByPriceAsc(20);
         model.addAttribute("products", cheapestProducts);
         model.addAttribute("title", "Best Deals");
         return "products/catalog";
@@ -347,7 +557,7 @@ public class ProductController {
 
     @GetMapping("/premium")
     public String showPremiumProducts(Model model) {
-        List<Product> premiumProducts = productService.getProductsSortedByPriceDesc(20);
+        List<ProductSnapshot> premiumProducts = productService.getProductsSortedByPriceDesc(20);
         model.addAttribute("products", premiumProducts);
         model.addAttribute("title", "Premium Products");
         return "products/catalog";
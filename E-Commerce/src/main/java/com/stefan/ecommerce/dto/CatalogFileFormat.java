@@ -0,0 +1,51 @@
+package com.stefan.ecommerce.dto;
+
+import java.util.Locale;
+
+/**
+ * File formats of the product import and export. Both use the same columns, so an export can be
+ * imported again: name, description, price, stock_quantity, image_url and categories.
+ */
+public enum CatalogFileFormat {
+
+    // Header row naming the columns; categories are separated by '|'
+    CSV("text/csv", "csv"),
+    // One JSON object per line; categories are an array of names
+    JSONL("application/x-ndjson", "jsonl");
+
+    private final String contentType;
+    private final String extension;
+
+    CatalogFileFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static CatalogFileFormat fromFilename(String filename) {
+        String name = filename == null ? "" : filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        throw new IllegalArgumentException("Unsupported catalog file: " + filename + " (expected .csv or .jsonl)");
+    }
+
+    public static CatalogFileFormat fromName(String name) {
+        for (CatalogFileFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported catalog format: " + name + " (expected csv or jsonl)");
+    }
+}
@@ -0,0 +1,20 @@
+package com.stefan.ecommerce.dto;
+
+import java.util.Set;
+
+/**
+ * Facet selection on the catalog page. Selected categories are alternatives (OR);
+ * the category, price and stock facets are combined with AND.
+ */
+public record CatalogFilter(Set<Long> categoryIds, PriceRange priceRange, boolean inStockOnly) {
+
+    public static final CatalogFilter NONE = new CatalogFilter(Set.of(), null, false);
+
+    public CatalogFilter {
+        categoryIds = categoryIds != null ? Set.copyOf(categoryIds) : Set.of();
+    }
+
+    public boolean isEmpty() {
+        return categoryIds.isEmpty() && priceRange == null && !inStockOnly;
+    }
+}
@@ -0,0 +1,9 @@
+package com.stefan.ecommerce.dto;
+
+import org.springframework.data.domain.Page;
+
+/**
+ * One page of the filtered catalog together with the facet counts of the whole result
+ */
+public record CatalogPage(Page<ProductCardView> products, FacetCounts facets) {
+}
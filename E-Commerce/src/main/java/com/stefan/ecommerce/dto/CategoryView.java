@@ -0,0 +1,27 @@
+package com.stefan.ecommerce.dto;
+
+import com.stefan.ecommerce.entities.Category;
+
+/**
+ * Immutable copy of what category pickers and filters show, safe to share between requests.
+ * Product counts are left out: they change with every product write.
+ */
+public record CategoryView(Long id,
+                           String name,
+                           String description,
+                           String imageUrl,
+                           Long parentId) {
+
+    /**
+     * Copy a category; its parent is read by id only, so no lazy load happens
+     */
+    public static CategoryView from(Category category) {
+        return new CategoryView(
+                category.getId(),
+                category.getName(),
+                category.getDescription(),
+                category.getImageUrl(),
+                category.getParent() != null ? category.getParent().getId() : null
+        );
+    }
+}
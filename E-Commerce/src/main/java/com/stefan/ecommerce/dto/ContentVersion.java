@@ -0,0 +1,29 @@
+package com.stefan.ecommerce.dto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Version of the rows behind a page: how many there are and when the newest one changed.
+ * Removing a row changes the count even when no remaining timestamp moves.
+ */
+public record ContentVersion(long count, LocalDateTime lastModified) {
+
+    /**
+     * Used by aggregate queries that compare two tables' timestamps; either may be null
+     */
+    public ContentVersion(Long count, LocalDateTime left, LocalDateTime right) {
+        this(count != null ? count : 0, latest(left, right));
+    }
+
+    public long lastModifiedMillis() {
+        return lastModified != null ? lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+    }
+
+    private static LocalDateTime latest(LocalDateTime left, LocalDateTime right) {
+        if (left == null || (right != null && right.isAfter(left))) {
+            return right;
+        }
+        return left;
+    }
+}
@@ -0,0 +1,17 @@
+package com.stefan.ecommerce.dto;
+
+import java.util.List;
+
+/**
+ * One keyset page; nextCursor is null on the last page
+ */
+public record CursorPage<T>(List<T> content, String nextCursor) {
+
+    public CursorPage {
+        content = List.copyOf(content);
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.stefan.ecommerce.dto;
+
+import java.util.Map;
+
+/**
+ * Number of products each facet value would match. Every facet is counted with the
+ * other facets' selections applied, so selecting a value never hides its siblings.
+ */
+public record FacetCounts(Map<Long, Integer> categories,
+                          Map<PriceRange, Integer> priceRanges,
+                          int inStock,
+                          int matching) {
+
+    public FacetCounts {
+        categories = Map.copyOf(categories);
+        priceRanges = Map.copyOf(priceRanges);
+    }
+
+    public int category(Long categoryId) {
+        return categories.getOrDefault(categoryId, 0);
+    }
+
+    public int priceRange(PriceRange priceRange) {
+        return priceRanges.getOrDefault(priceRange, 0);
+    }
+}
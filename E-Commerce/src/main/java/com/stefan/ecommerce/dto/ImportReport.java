@@ -0,0 +1,15 @@
+package com.stefan.ecommerce.dto;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a bulk product import. Only the first few rejected rows are described.
+ */
+public record ImportReport(long imported, long rejected, List<String> errors, Duration elapsed) {
+
+    public long rowsPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return (imported + rejected) * 1000 / millis;
+    }
+}
@@ -0,0 +1,7 @@
+package com.stefan.ecommerce.dto;
+
+/**
+ * One line of a checkout: a product and how many units of it
+ */
+public record OrderLine(Long productId, int quantity) {
+}
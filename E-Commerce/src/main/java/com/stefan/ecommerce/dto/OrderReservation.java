@@ -0,0 +1,9 @@
+package com.stefan.ecommerce.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A pending order's stock hold and when it runs out
+ */
+public record OrderReservation(Long orderId, LocalDateTime reservedUntil) {
+}
@@ -0,0 +1,43 @@
+package com.stefan.ecommerce.dto;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last row of a keyset page: the sort key and id of that row,
+ * plus the sort it was produced under. Clients only see the opaque encoded form.
+ */
+public record PageCursor(String sortBy, Sort.Direction direction, Long id, String key) {
+
+    private static final String SEPARATOR = "\n";
+
+    public String encode() {
+        String raw = sortBy + SEPARATOR + direction + SEPARATOR + id + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor received from a client; null when it is blank or malformed
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            return new PageCursor(parts[0], Sort.Direction.valueOf(parts[1]), Long.valueOf(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public boolean matches(String sortBy, Sort.Direction direction) {
+        return this.sortBy.equals(sortBy) && this.direction == direction;
+    }
+}
@@ -0,0 +1,71 @@
+package com.stefan.ecommerce.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed price buckets offered as a catalog facet; lower bound inclusive, upper bound exclusive.
+ */
+public enum PriceRange {
+
+    UNDER_25("0-25", "Under $25", null, new BigDecimal("25")),
+    FROM_25_TO_50("25-50", "$25 - $50", new BigDecimal("25"), new BigDecimal("50")),
+    FROM_50_TO_100("50-100", "$50 - $100", new BigDecimal("50"), new BigDecimal("100")),
+    FROM_100_TO_250("100-250", "$100 - $250", new BigDecimal("100"), new BigDecimal("250")),
+    FROM_250_TO_500("250-500", "$250 - $500", new BigDecimal("250"), new BigDecimal("500")),
+    OVER_500("500+", "$500 and up", new BigDecimal("500"), null);
+
+    private final String key;
+    private final String label;
+    private final BigDecimal min;
+    private final BigDecimal max;
+
+    PriceRange(String key, String label, BigDecimal min, BigDecimal max) {
+        this.key = key;
+        this.label = label;
+        this.min = min;
+        this.max = max;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public BigDecimal getMin() {
+        return min;
+    }
+
+    public BigDecimal getMax() {
+        return max;
+    }
+
+    public boolean contains(BigDecimal price) {
+        return price != null
+                && (min == null || price.compareTo(min) >= 0)
+                && (max == null || price.compareTo(max) < 0);
+    }
+
+    public static PriceRange of(BigDecimal price) {
+        for (PriceRange range : values()) {
+            if (range.contains(price)) {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Range for a request parameter such as "50-100"; null when the key is blank or unknown
+     */
+    public static PriceRange fromKey(String key) {
+        for (PriceRange range : values()) {
+            if (range.key.equals(key)) {
+                return range;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.stefan.ecommerce.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * What a product card in a listing shows, selected straight from the products table
+ * instead of loading managed entities. createdAt is carried for keyset cursors.
+ */
+public record ProductCardView(Long id,
+                              String name,
+                              String description,
+                              BigDecimal price,
+                              Integer stockQuantity,
+                              String imageUrl,
+                              LocalDateTime createdAt) {
+
+    // Cards abbreviate the description to 80 characters; one more tells them it was cut
+    public static final int DESCRIPTION_PREVIEW_LENGTH = 81;
+}
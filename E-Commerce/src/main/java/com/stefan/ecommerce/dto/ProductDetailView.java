@@ -0,0 +1,56 @@
+package com.stefan.ecommerce.dto;
+
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable copy of everything the product details page shows, safe to share from a cache.
+ */
+public record ProductDetailView(Long id,
+                                String name,
+                                String description,
+                                BigDecimal price,
+                                Integer stockQuantity,
+                                String dimensions,
+                                Double weightKg,
+                                String imageUrl,
+                                boolean active,
+                                LocalDateTime createdAt,
+                                LocalDateTime updatedAt,
+                                List<CategoryView> categories) {
+
+    public record CategoryView(Long id, String name) {
+    }
+
+    public ProductDetailView {
+        categories = categories != null ? List.copyOf(categories) : List.of();
+    }
+
+    /**
+     * Copy a product; its categories must be initialized (or initializable in the current session)
+     */
+    public static ProductDetailView from(Product product) {
+        return new ProductDetailView(
+                product.getId(),
+                product.getName(),
+                product.getDescription(),
+                product.getPrice(),
+                product.getStockQuantity(),
+                product.getDimensions(),
+                product.getWeightKg(),
+                product.getImageUrl(),
+                Boolean.TRUE.equals(product.getActive()),
+                product.getCreatedAt(),
+                product.getUpdatedAt(),
+                product.getCategories().stream()
+                        .sorted(Comparator.comparing(Category::getName))
+                        .map(category -> new CategoryView(category.getId(), category.getName()))
+                        .toList()
+        );
+    }
+}
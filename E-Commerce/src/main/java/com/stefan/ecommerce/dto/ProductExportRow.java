@@ -0,0 +1,15 @@
+package com.stefan.ecommerce.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * One product of the catalog export. categories holds the category names joined by '|', or null.
+ */
+public record ProductExportRow(Long id,
+                               String name,
+                               String description,
+                               BigDecimal price,
+                               Integer stockQuantity,
+                               String imageUrl,
+                               String categories) {
+}
@@ -0,0 +1,38 @@
+package com.stefan.ecommerce.dto;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Any combination of catalog criteria: a search term matched against name and description,
+ * the facet selection, and a price interval typed in by the user (both bounds inclusive).
+ * Blank or null parts do not narrow the result.
+ */
+public record ProductQuery(String searchTerm, CatalogFilter filter, BigDecimal minPrice, BigDecimal maxPrice) {
+
+    public static final ProductQuery ALL = new ProductQuery(null, CatalogFilter.NONE, null, null);
+
+    public ProductQuery {
+        searchTerm = searchTerm == null || searchTerm.isBlank() ? null : searchTerm.strip();
+        filter = filter != null ? filter : CatalogFilter.NONE;
+    }
+
+    public static ProductQuery of(CatalogFilter filter) {
+        return new ProductQuery(null, filter, null, null);
+    }
+
+    public static ProductQuery inCategory(Long categoryId) {
+        return of(new CatalogFilter(Set.of(categoryId), null, false));
+    }
+
+    public static ProductQuery priceBetween(BigDecimal minPrice, BigDecimal maxPrice) {
+        return new ProductQuery(null, CatalogFilter.NONE, minPrice, maxPrice);
+    }
+
+    /**
+     * True when only facets are selected, which the in-memory facet index answers on its own
+     */
+    public boolean isFacetOnly() {
+        return searchTerm == null && minPrice == null && maxPrice == null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.stefan.ecommerce.dto;
+
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable copy of a product's indexable state, safe to hand to other threads
+ * after the owning transaction has committed.
+ */
+public record ProductSnapshot(Long id,
+                              String name,
+                              String description,
+                              BigDecimal price,
+                              Integer stockQuantity,
+                              String imageUrl,
+                              boolean active,
+                              LocalDateTime createdAt,
+                              LocalDateTime updatedAt,
+                              Set<Long> categoryIds,
+                              List<String> categoryNames) {
+
+    public ProductSnapshot {
+        categoryIds = categoryIds != null ? Set.copyOf(categoryIds) : Set.of();
+        categoryNames = categoryNames != null ? List.copyOf(categoryNames) : List.of();
+    }
+
+    /**
+     * Copy a product; its categories must be initialized (or initializable in the current session)
+     */
+    public static ProductSnapshot from(Product product) {
+        Set<Category> categories = product.getCategories();
+        return new ProductSnapshot(
+                product.getId(),
+                product.getName(),
+                product.getDescription(),
+                product.getPrice(),
+                product.getStockQuantity(),
+                product.getImageUrl(),
+                Boolean.TRUE.equals(product.getActive()),
+                product.getCreatedAt(),
+                product.getUpdatedAt(),
+                categories.stream().map(Category::getId).collect(Collectors.toSet()),
+                categories.stream().map(Category::getName).toList()
+        );
+    }
+
+    /**
+     * The same product with a stock level written outside the entity, e.g. by a batched UPDATE
+     */
+    public ProductSnapshot withStockQuantity(Integer stockQuantity) {
+        return new ProductSnapshot(id, name, description, price, stockQuantity, imageUrl, active,
+                createdAt, updatedAt, categoryIds, categoryNames);
+    }
+
+    public boolean isInStock() {
+        return stockQuantity != null && stockQuantity > 0;
+    }
+}
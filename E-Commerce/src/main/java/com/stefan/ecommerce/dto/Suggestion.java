@@ -0,0 +1,20 @@
+package com.stefan.ecommerce.dto;
+
+/**
+ * One search-as-you-type completion, either a product or a category name.
+ */
+public record Suggestion(String text, Type type, Long id) {
+
+    public enum Type {
+        PRODUCT,
+        CATEGORY
+    }
+
+    public static Suggestion product(Long id, String name) {
+        return new Suggestion(name, Type.PRODUCT, id);
+    }
+
+    public static Suggestion category(Long id, String name) {
+        return new Suggestion(name, Type.CATEGORY, id);
+    }
+}
@@ -0,0 +1,35 @@
+package com.stefan.ecommerce.entities;
+
+import jakarta.persistence.*;
+
+/**
+ * Version counter of some data that application nodes keep in memory. A writer increments it
+ * in its own transaction; every node compares it with the version of its copy, so a change
+ * made on one node reaches the others without messaging.
+ */
+@Entity
+@Table(name = "cache_versions")
+public class CacheVersion {
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public CacheVersion() {}
+
+    public CacheVersion(String name, long version) {
+        this.name = name;
+        this.version = version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
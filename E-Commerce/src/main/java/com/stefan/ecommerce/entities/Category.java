@@ -2,16 +2,21 @@ package com.stefan.ecommerce.entities;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "categories")
+@Table(name = "categories", indexes = {
+        // Subcategory listings
+        @Index(name = "idx_categories_parent_id", columnList = "parent_id")
+})
 public class Category {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "categories_seq")
+    @SequenceGenerator(name = "categories_seq", sequenceName = "categories_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Category name is required")
@@ -35,6 +40,17 @@ public class Category {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Active products linked to this category, kept by CategoryProductCounts with relative
+    // UPDATEs; never written from the entity, so a stale copy cannot overwrite a newer count
+    @ColumnDefault("0")
+    @Column(name = "active_product_count", nullable = false, insertable = false, updatable = false)
+    private Integer activeProductCount = 0;
+
+    // Null for a top-level category; changed only through CategoryService, which keeps category_closure in step
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "parent_id")
+    private Category parent;
+
     @ManyToMany(mappedBy = "categories", fetch = FetchType.LAZY)
     private Set<Product> products = new HashSet<>();
 
@@ -124,6 +140,18 @@ public class Category {
         this.updatedAt = updatedAt;
     }
 
+    public Integer getActiveProductCount() {
+        return activeProductCount;
+    }
+
+    public Category getParent() {
+        return parent;
+    }
+
+    public void setParent(Category parent) {
+        this.parent = parent;
+    }
+
     public Set<Product> getProducts() {
         return products;
     }
@@ -0,0 +1,81 @@
+package com.stefan.ecommerce.entities;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * One ancestor/descendant pair of the category tree, including each category paired with
+ * itself at depth 0. A subtree is every row with the same ancestor, so "products anywhere
+ * under Electronics" is a single indexed join instead of a recursive walk.
+ * Rows are maintained by CategoryService through CategoryClosureRepository.
+ */
+@Entity
+@Table(name = "category_closure", indexes = {
+        // The primary key (ancestor_id, descendant_id) serves subtrees; this one serves ancestor paths
+        @Index(name = "idx_category_closure_descendant_ancestor", columnList = "descendant_id, ancestor_id")
+})
+@IdClass(CategoryClosure.Key.class)
+public class CategoryClosure {
+
+    @Id
+    @Column(name = "ancestor_id", nullable = false)
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id", nullable = false)
+    private Long descendantId;
+
+    // Number of parent links between the two; 0 for a category paired with itself
+    @Column(name = "depth", nullable = false)
+    private int depth;
+
+    public CategoryClosure() {}
+
+    public CategoryClosure(Long ancestorId, Long descendantId, int depth) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+    }
+
+    public Long getAncestorId() {
+        return ancestorId;
+    }
+
+    public Long getDescendantId() {
+        return descendantId;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long ancestorId;
+        private Long descendantId;
+
+        public Key() {}
+
+        public Key(Long ancestorId, Long descendantId) {
+            this.ancestorId = ancestorId;
+            this.descendantId = descendantId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(ancestorId, key.ancestorId) && Objects.equals(descendantId, key.descendantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ancestorId, descendantId);
+        }
+    }
+}
@@ -8,11 +8,17 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_reserved_until", columnList = "reserved_until")
+})
+@NamedEntityGraph(name = "Order.details",
+        attributeNodes = {@NamedAttributeNode("user"), @NamedAttributeNode(value = "orderItems", subgraph = "items")},
+        subgraphs = @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode("product")))
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Order number is required")
@@ -57,6 +63,10 @@ public class Order {
     @Column(name = "cancelled_date")
     private LocalDateTime cancelledDate;
 
+    // Until when the stock of a pending order's items is held; null once the hold is converted or released
+    @Column(name = "reserved_until")
+    private LocalDateTime reservedUntil;
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     private List<OrderItem> orderItems = new ArrayList<>();
 
@@ -171,6 +181,14 @@ public class Order {
         this.cancelledDate = cancelledDate;
     }
 
+    public LocalDateTime getReservedUntil() {
+        return reservedUntil;
+    }
+
+    public void setReservedUntil(LocalDateTime reservedUntil) {
+        this.reservedUntil = reservedUntil;
+    }
+
     public List<OrderItem> getOrderItems() {
         return orderItems;
     }
@@ -205,6 +223,10 @@ public class Order {
         return OrderStatus.PENDING.equals(status);
     }
 
+    public boolean isReserved() {
+        return reservedUntil != null;
+    }
+
     public boolean isConfirmed() {
         return OrderStatus.CONFIRMED.equals(status);
     }
@@ -8,11 +8,19 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        // Keyset pagination: one index per catalog sort option, id as the tie-breaker
+        @Index(name = "idx_products_active_name_id", columnList = "active, name, id"),
+        @Index(name = "idx_products_active_price_id", columnList = "active, price, id"),
+        @Index(name = "idx_products_active_created_at_id", columnList = "active, created_at, id")
+})
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids come from a sequence in blocks of 50 (pooled-lo), so Hibernate can batch inserts; JDBC writers
+    // take blocks from the same sequence through SequenceIds
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Product name is required")
@@ -58,7 +66,8 @@ public class Product {
     @JoinTable(
             name = "product_categories",
             joinColumns = @JoinColumn(name = "product_id"),
-            inverseJoinColumns = @JoinColumn(name = "category_id")
+            inverseJoinColumns = @JoinColumn(name = "category_id"),
+            indexes = @Index(name = "idx_product_categories_category_product", columnList = "category_id, product_id")
     )
     private Set<Category> categories = new HashSet<>();
 
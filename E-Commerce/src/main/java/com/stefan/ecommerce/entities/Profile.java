@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 public class Profile {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "profiles_seq")
+    @SequenceGenerator(name = "profiles_seq", sequenceName = "profiles_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
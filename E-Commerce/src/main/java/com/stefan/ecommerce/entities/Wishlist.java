@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 public class Wishlist {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "wishlists_seq")
+    @SequenceGenerator(name = "wishlists_seq", sequenceName = "wishlists_seq", allocationSize = 50)
     private Long id;
 
     @NotNull(message = "User is required")
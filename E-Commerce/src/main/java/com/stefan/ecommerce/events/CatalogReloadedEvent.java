@@ -0,0 +1,9 @@
+package com.stefan.ecommerce.events;
+
+/**
+ * Published after a bulk change to the products table that did not publish per-product events.
+ * Listeners maintaining in-memory views of the catalog should reload them from the database
+ * once the publishing transaction, if there is one, has committed.
+ */
+public record CatalogReloadedEvent(long changedProducts) {
+}
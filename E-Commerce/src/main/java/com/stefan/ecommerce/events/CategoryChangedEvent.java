@@ -0,0 +1,14 @@
+package com.stefan.ecommerce.events;
+
+/**
+ * Published by the service layer whenever a category is created, renamed, moved, (de)activated or removed.
+ */
+public record CategoryChangedEvent(Long categoryId) {
+
+    /**
+     * A bulk operation changed several categories at once; categoryId is null
+     */
+    public static CategoryChangedEvent several() {
+        return new CategoryChangedEvent(null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.stefan.ecommerce.events;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+
+/**
+ * Published by the service layer whenever a product is created, modified or removed.
+ * Listeners maintaining in-memory views of the catalog should consume it after commit.
+ */
+public record ProductChangedEvent(Long productId, ProductSnapshot snapshot) {
+
+    public static ProductChangedEvent of(ProductSnapshot snapshot) {
+        return new ProductChangedEvent(snapshot.id(), snapshot);
+    }
+
+    public static ProductChangedEvent removed(Long productId) {
+        return new ProductChangedEvent(productId, null);
+    }
+
+    public boolean isRemoved() {
+        return snapshot == null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.stefan.ecommerce.repositories;
+
+import com.stefan.ecommerce.entities.CacheVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CacheVersionRepository extends JpaRepository<CacheVersion, String> {
+
+    // Read just the counter, a primary key lookup cheap enough to poll
+    @Query("SELECT v.version FROM CacheVersion v WHERE v.name = :name")
+    Optional<Long> findVersion(@Param("name") String name);
+
+    // Increment in place, so concurrent writers never lose a bump
+    @Modifying
+    @Query("UPDATE CacheVersion v SET v.version = v.version + 1 WHERE v.name = :name")
+    int increment(@Param("name") String name);
+}
@@ -0,0 +1,51 @@
+package com.stefan.ecommerce.repositories;
+
+import com.stefan.ecommerce.entities.CategoryClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+// Closure rows are only written through these set-based statements, never one path at a time from Java
+@Repository
+public interface CategoryClosureRepository extends JpaRepository<CategoryClosure, CategoryClosure.Key> {
+
+    // Whether descendantId is ancestorId itself or anywhere below it
+    boolean existsByAncestorIdAndDescendantId(Long ancestorId, Long descendantId);
+
+    // Ids of a category and everything below it
+    @Query("SELECT cc.descendantId FROM CategoryClosure cc WHERE cc.ancestorId = :categoryId")
+    List<Long> findSubtreeIds(@Param("categoryId") Long categoryId);
+
+    // Link a new category to its parent and every ancestor of the parent; its own depth 0 row is saved separately
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+            "SELECT ancestor_id, :categoryId, depth + 1 FROM category_closure WHERE descendant_id = :parentId",
+            nativeQuery = true)
+    int insertPathsUnder(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    // Cut a subtree loose: drop the paths from ancestors outside it to every category in it
+    @Modifying
+    @Query(value = "DELETE FROM category_closure WHERE " +
+            "descendant_id IN (SELECT descendant_id FROM category_closure WHERE ancestor_id = :categoryId) AND " +
+            "ancestor_id NOT IN (SELECT descendant_id FROM category_closure WHERE ancestor_id = :categoryId)",
+            nativeQuery = true)
+    int detachSubtree(@Param("categoryId") Long categoryId);
+
+    // Hang a detached subtree under a new parent: every ancestor of the parent reaches every category in it
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+            "SELECT above.ancestor_id, below.descendant_id, above.depth + below.depth + 1 " +
+            "FROM category_closure above CROSS JOIN category_closure below " +
+            "WHERE above.descendant_id = :parentId AND below.ancestor_id = :categoryId",
+            nativeQuery = true)
+    int attachSubtree(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    // Remove a leaf category from the tree
+    @Modifying
+    @Query("DELETE FROM CategoryClosure cc WHERE cc.descendantId = :categoryId")
+    int deleteByDescendant(@Param("categoryId") Long categoryId);
+}
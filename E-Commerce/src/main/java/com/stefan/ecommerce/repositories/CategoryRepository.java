@@ -1,19 +1,28 @@
 package com.stefan.ecommerce.repositories;
 
+import com.stefan.ecommerce.dto.ContentVersion;
 import com.stefan.ecommerce.entities.Category;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
 
+    // Active products linked to category c, the value active_product_count stores
+    String ACTIVE_PRODUCT_COUNT = "(SELECT COUNT(p) FROM Product p JOIN p.categories pc WHERE pc = c AND p.active = true)";
+
     List<Category> findByActiveTrue();
 
     List<Category> findByActiveTrueOrderByNameAsc();
@@ -27,6 +36,22 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
 
     List<Category> findByNameContainingIgnoreCaseAndActiveTrue(String name);
 
+    // Find the active direct subcategories of a category
+    List<Category> findByParentIdAndActiveTrueOrderByNameAsc(Long parentId);
+
+    boolean existsByParentId(Long parentId);
+
+    // Lock every category row, in id order, until the transaction ends: the one lock that changes to
+    // the shape of the tree take, so two of them never check and rewrite category_closure at once
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c.id FROM Category c ORDER BY c.id")
+    List<Long> lockTree();
+
+    // Find the categories above a category, top-level first
+    @Query("SELECT c FROM CategoryClosure cc JOIN Category c ON c.id = cc.ancestorId " +
+            "WHERE cc.descendantId = :id AND cc.depth > 0 ORDER BY cc.depth DESC")
+    List<Category> findAncestors(@Param("id") Long id);
+
     @Query("SELECT c FROM Category c LEFT JOIN FETCH c.products WHERE c.id = :id")
     Optional<Category> findByIdWithProducts(@Param("id") Long id);
 
@@ -42,6 +67,46 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     @Query("SELECT c.id, c.name, COUNT(p) FROM Category c LEFT JOIN c.products p WHERE c.active = true AND (p.active = true OR p IS NULL) GROUP BY c.id, c.name")
     List<Object[]> findCategoriesWithProductCount();
 
+    // Shift the stored active product count of some categories; relative, so concurrent writers add up
+    @Modifying
+    @Query("UPDATE Category c SET c.activeProductCount = c.activeProductCount + :delta WHERE c.id IN :ids")
+    int adjustActiveProductCount(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    // Count a status change of many products before it is written: every category linked to one
+    // of them moves by delta for each of its products whose active flag is about to change
+    @Modifying
+    @Query("UPDATE Category c SET c.activeProductCount = c.activeProductCount + :delta * " +
+            "(SELECT COUNT(p) FROM Product p JOIN p.categories pc WHERE pc = c AND p.id IN :ids AND p.active <> :active) " +
+            "WHERE c.id IN (SELECT pc.id FROM Product p JOIN p.categories pc WHERE p.id IN :ids AND p.active <> :active)")
+    int adjustActiveProductCountForStatusChange(@Param("ids") Collection<Long> productIds, @Param("active") boolean active,
+                                                @Param("delta") int delta);
+
+    // Zero the stored count of a category that just lost all of its links
+    @Modifying
+    @Query("UPDATE Category c SET c.activeProductCount = 0 WHERE c.id = :id")
+    int clearActiveProductCount(@Param("id") Long id);
+
+    // Set the active flag of the given categories that do not have it yet
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Category c SET c.active = :active, c.updatedAt = :now WHERE c.id IN :ids AND c.active <> :active")
+    int updateActiveByIdIn(@Param("ids") Collection<Long> ids, @Param("active") boolean active, @Param("now") LocalDateTime now);
+
+    // Deactivate every active category that has no products
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Category c SET c.active = false, c.updatedAt = :now WHERE c.active = true AND c.products IS EMPTY")
+    int deactivateEmptyCategories(@Param("now") LocalDateTime now);
+
+    // Unlink every product from a category with one join-table DELETE
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM product_categories WHERE category_id = :id", nativeQuery = true)
+    int unlinkAllProducts(@Param("id") Long id);
+
+    // Recount the categories whose stored active product count differs from their links
+    @Modifying
+    @Query("UPDATE Category c SET c.activeProductCount = " + ACTIVE_PRODUCT_COUNT +
+            " WHERE c.activeProductCount <> " + ACTIVE_PRODUCT_COUNT)
+    int reconcileActiveProductCounts();
+
     @Query("SELECT c FROM Category c LEFT JOIN c.products p WHERE c.active = true AND (p.active = true OR p IS NULL) GROUP BY c ORDER BY COUNT(p) DESC")
     List<Category> findCategoriesOrderByProductCountDesc();
 
@@ -78,4 +143,18 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
             "(LOWER(c.name) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR " +
             "LOWER(c.description) LIKE LOWER(CONCAT('%', :searchTerm, '%')))")
     Page<Category> searchCategories(@Param("searchTerm") String searchTerm, Pageable pageable);
-}
\ No newline at end of file
+
+    // Version of a category page: the categories of its subtree with their active products, and
+    // the categories above it, which the breadcrumb names
+    @Query("SELECT new com.stefan.ecommerce.dto.ContentVersion(COUNT(p), GREATEST(MAX(c.updatedAt), " +
+            "(SELECT MAX(a.updatedAt) FROM CategoryClosure up JOIN Category a ON a.id = up.ancestorId WHERE up.descendantId = :id)), " +
+            "MAX(p.updatedAt)) " +
+            "FROM CategoryClosure cc JOIN Category c ON c.id = cc.descendantId LEFT JOIN c.products p ON p.active = true " +
+            "WHERE cc.ancestorId = :id GROUP BY cc.ancestorId")
+    Optional<ContentVersion> findPageVersionById(@Param("id") Long id);
+
+    // Version of the active category listing, which shows product counts: one row per product link
+    @Query("SELECT new com.stefan.ecommerce.dto.ContentVersion(COUNT(c), MAX(c.updatedAt), MAX(p.updatedAt)) " +
+            "FROM Category c LEFT JOIN c.products p WHERE c.active = true")
+    ContentVersion findActiveListingVersion();
+}
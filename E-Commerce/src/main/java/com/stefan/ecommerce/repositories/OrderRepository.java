@@ -1,7 +1,11 @@
 package com.stefan.ecommerce.repositories;
 
+import com.stefan.ecommerce.dto.OrderReservation;
 import com.stefan.ecommerce.entities.Order;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -15,6 +19,20 @@ import java.util.Optional;
 public interface OrderRepository extends JpaRepository<Order, Long> {
     // Add custom queries if needed
 
+    // Find an order with its user, items and their products (order details page)
+    @EntityGraph("Order.details")
+    Optional<Order> findDetailsById(Long id);
+
+    // Find an order and lock its row until the transaction ends; stock holds change under this lock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id = :id")
+    Optional<Order> findLockedById(@Param("id") Long id);
+
+    // Find the stock holds of pending orders, to put them back on the expiry timer after a restart
+    @Query("SELECT new com.stefan.ecommerce.dto.OrderReservation(o.id, o.reservedUntil) FROM Order o " +
+            "WHERE o.reservedUntil IS NOT NULL AND o.status = com.stefan.ecommerce.entities.Order.OrderStatus.PENDING")
+    List<OrderReservation> findReservations();
+
     // Find by order number
     Optional<Order> findByOrderNumber(String orderNumber);
 
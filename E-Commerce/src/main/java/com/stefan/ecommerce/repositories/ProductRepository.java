@@ -1,20 +1,45 @@
 package com.stefan.ecommerce.repositories;
 
+import com.stefan.ecommerce.dto.ContentVersion;
+import com.stefan.ecommerce.dto.ProductCardView;
+import com.stefan.ecommerce.dto.ProductExportRow;
 import com.stefan.ecommerce.entities.Product;
-import com.stefan.ecommerce.entities.Category;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+// Filtering by any combination of criteria goes through JpaSpecificationExecutor with ProductSpecifications
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
+
+    // Card lookups by id select only the columns a card shows, and just the start of the description
+    String CARD_VIEW = "SELECT new com.stefan.ecommerce.dto.ProductCardView(p.id, p.name, " +
+            "SUBSTRING(p.description, 1, " + ProductCardView.DESCRIPTION_PREVIEW_LENGTH + "), " +
+            "p.price, p.stockQuantity, p.imageUrl, p.createdAt) FROM Product p ";
+
+    // Linked to category :categoryId or any category below it: product_categories joined once to
+    // category_closure on its (ancestor_id, descendant_id) key, however deep the tree is
+    String IN_CATEGORY_SUBTREE = "EXISTS (SELECT 1 FROM p.categories c, CategoryClosure cc " +
+            "WHERE cc.ancestorId = :categoryId AND cc.descendantId = c.id)";
 
     // Find all active products (for customer view)
     List<Product> findByActiveTrue();
@@ -22,26 +47,67 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // Find all active products with pagination
     Page<Product> findByActiveTrue(Pageable pageable);
 
-    // Find products by name (case-insensitive search)
-    List<Product> findByNameContainingIgnoreCase(String name);
+    // Find one page of active products without the COUNT query
+    Slice<Product> findSliceByActiveTrue(Pageable pageable);
+
+    // Find one page of active product cards without the COUNT query. Sorted pages are derived
+    // queries: a sorted @Query string is re-parsed on every call, which costs more than the entities it saves
+    Slice<ProductCardView> findCardSliceByActiveTrue(Pageable pageable);
+
+    // Keyset scrolling over active products, served by the (active, sort key, id) indexes
+    Window<Product> findByActiveTrue(ScrollPosition position, Sort sort, Limit limit);
+
+    // Keyset scrolling over active product cards; derived card queries select the whole description
+    Window<ProductCardView> findCardsByActiveTrue(ScrollPosition position, Sort sort, Limit limit);
+
+    // Set the active flag of the given products that do not have it yet
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.active = :active, p.updatedAt = :now WHERE p.id IN :ids AND p.active <> :active")
+    int updateActiveByIdIn(@Param("ids") Collection<Long> ids, @Param("active") boolean active, @Param("now") LocalDateTime now);
+
+    // Take quantity units off the stock in one statement, only while that many are left. The row lock
+    // taken by the UPDATE orders concurrent buyers, and 0 rows back means the product is missing or short
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity - :quantity, p.updatedAt = :now " +
+            "WHERE p.id = :id AND p.stockQuantity >= :quantity")
+    int decreaseStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    // Put quantity units back on the stock in one statement
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity + :quantity, p.updatedAt = :now WHERE p.id = :id")
+    int increaseStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
 
-    // Find active products by name (customer search)
-    List<Product> findByNameContainingIgnoreCaseAndActiveTrue(String name);
+    // Write back units already sold from memory (HotStock); they cannot be refused, so the stock stops at zero
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.stockQuantity = GREATEST(p.stockQuantity - :quantity, 0), p.updatedAt = :now WHERE p.id = :id")
+    int consumeStock(@Param("id") Long id, @Param("quantity") long quantity, @Param("now") LocalDateTime now);
 
-    // Find products by price range
-    List<Product> findByPriceBetweenAndActiveTrue(BigDecimal minPrice, BigDecimal maxPrice);
+    // Find the stock of one product without loading it
+    @Query("SELECT p.stockQuantity FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockQuantityById(@Param("id") Long id);
 
-    // Find products by category
-    @Query("SELECT p FROM Product p JOIN p.categories c WHERE c = :category AND p.active = true")
-    List<Product> findByCategoryAndActiveTrue(@Param("category") Category category);
+    // Find the stock of several products as [id, stockQuantity] pairs, without loading them
+    @Query("SELECT p.id, p.stockQuantity FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findStockQuantitiesByIdIn(@Param("ids") Collection<Long> ids);
 
-    // Find products by category with pagination
-    @Query("SELECT p FROM Product p JOIN p.categories c WHERE c = :category AND p.active = true")
-    Page<Product> findByCategoryAndActiveTrue(@Param("category") Category category, Pageable pageable);
+    // Find product cards by id, in no particular order
+    @Query(CARD_VIEW + "WHERE p.id IN :ids")
+    List<ProductCardView> findCardsByIdIn(@Param("ids") Collection<Long> ids);
 
-    // Find products by category ID
-    @Query("SELECT p FROM Product p JOIN p.categories c WHERE c.id = :categoryId AND p.active = true")
-    List<Product> findByCategoryIdAndActiveTrue(@Param("categoryId") Long categoryId);
+    // Find one page of a category's active product cards without the COUNT query
+    Slice<ProductCardView> findCardSliceByCategoriesIdAndActiveTrue(Long categoryId, Pageable pageable);
+
+    // Keyset scrolling over a category's active product cards
+    Window<ProductCardView> findCardsByCategoriesIdAndActiveTrue(Long categoryId, ScrollPosition position, Sort sort, Limit limit);
+
+    // Find one page of the active product cards in a category and all of its subcategories
+    @Query(value = CARD_VIEW + "WHERE p.active = true AND " + IN_CATEGORY_SUBTREE,
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.active = true AND " + IN_CATEGORY_SUBTREE)
+    Page<ProductCardView> findCardPageInCategorySubtree(@Param("categoryId") Long categoryId, Pageable pageable);
+
+    // Count the active products in a category and all of its subcategories, each product once
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.active = true AND " + IN_CATEGORY_SUBTREE)
+    long countActiveInCategorySubtree(@Param("categoryId") Long categoryId);
 
     // Complex search query (name, description, category)
     @Query("SELECT DISTINCT p FROM Product p LEFT JOIN p.categories c WHERE " +
@@ -59,11 +125,62 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
             "LOWER(c.name) LIKE LOWER(CONCAT('%', :searchTerm, '%')))")
     Page<Product> searchProducts(@Param("searchTerm") String searchTerm, Pageable pageable);
 
-    // Find products with low stock (for admin alerts)
-    List<Product> findByStockQuantityLessThanAndActiveTrue(Integer threshold);
-
-    // Find out of stock products
-    List<Product> findByStockQuantityAndActiveTrue(Integer stockQuantity);
+    // Full-text search (Postgres only): ranked by the GIN-indexed search_vector, see db/postgresql/product-search.sql
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND " +
+            "p.search_vector @@ to_tsquery('simple', :tsQuery) " +
+            "ORDER BY ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) DESC, p.id",
+            nativeQuery = true)
+    List<Product> fullTextSearch(@Param("tsQuery") String tsQuery);
+
+    // Full-text search with pagination (Postgres only)
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND " +
+            "p.search_vector @@ to_tsquery('simple', :tsQuery) " +
+            "ORDER BY ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) DESC, p.id",
+            countQuery = "SELECT COUNT(*) FROM products p WHERE p.active = true AND " +
+                    "p.search_vector @@ to_tsquery('simple', :tsQuery)",
+            nativeQuery = true)
+    Page<Product> fullTextSearch(@Param("tsQuery") String tsQuery, Pageable pageable);
+
+    // Full-text search keyset page (Postgres only): rows ranked after (rank, id), in fullTextSearch order
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND " +
+            "p.search_vector @@ to_tsquery('simple', :tsQuery) AND " +
+            "(ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) < :rank OR " +
+            "(ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) = :rank AND p.id > :id)) " +
+            "ORDER BY ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) DESC, p.id LIMIT :limit",
+            nativeQuery = true)
+    List<Product> fullTextSearchAfter(@Param("tsQuery") String tsQuery, @Param("rank") float rank,
+                                      @Param("id") long id, @Param("limit") int limit);
+
+    // Rank of one product for a full-text query (Postgres only), used to build keyset cursors
+    @Query(value = "SELECT ts_rank(p.search_vector, to_tsquery('simple', :tsQuery)) FROM products p WHERE p.id = :id",
+            nativeQuery = true)
+    float fullTextRank(@Param("tsQuery") String tsQuery, @Param("id") long id);
+
+    // Typo-tolerant name search (Postgres only): pg_trgm word similarity over the GIN trigram index, see db/postgresql/product-fuzzy-search.sql
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND :searchTerm <% p.name " +
+            "ORDER BY word_similarity(:searchTerm, p.name) DESC, p.id",
+            nativeQuery = true)
+    List<Product> fuzzySearch(@Param("searchTerm") String searchTerm);
+
+    // Typo-tolerant name search with pagination (Postgres only)
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND :searchTerm <% p.name " +
+            "ORDER BY word_similarity(:searchTerm, p.name) DESC, p.id",
+            countQuery = "SELECT COUNT(*) FROM products p WHERE p.active = true AND :searchTerm <% p.name",
+            nativeQuery = true)
+    Page<Product> fuzzySearch(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    // Typo-tolerant name search keyset page (Postgres only): rows ranked after (similarity, id)
+    @Query(value = "SELECT p.* FROM products p WHERE p.active = true AND :searchTerm <% p.name AND " +
+            "(word_similarity(:searchTerm, p.name) < :similarity OR " +
+            "(word_similarity(:searchTerm, p.name) = :similarity AND p.id > :id)) " +
+            "ORDER BY word_similarity(:searchTerm, p.name) DESC, p.id LIMIT :limit",
+            nativeQuery = true)
+    List<Product> fuzzySearchAfter(@Param("searchTerm") String searchTerm, @Param("similarity") float similarity,
+                                   @Param("id") long id, @Param("limit") int limit);
+
+    // Name similarity of one product (Postgres only), used to build keyset cursors
+    @Query(value = "SELECT word_similarity(:searchTerm, p.name) FROM products p WHERE p.id = :id", nativeQuery = true)
+    float fuzzySimilarity(@Param("searchTerm") String searchTerm, @Param("id") long id);
 
     // Find products with categories loaded (performance optimization)
     @Query("SELECT p FROM Product p LEFT JOIN FETCH p.categories WHERE p.id = :id")
@@ -74,10 +191,6 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p WHERE p.active = true ORDER BY p.createdAt DESC")
     List<Product> findFeaturedProducts(Pageable pageable);
 
-    // Find products by price range with pagination
-    Page<Product> findByPriceBetweenAndActiveTrue(
-            BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable);
-
     // Count active products
     long countByActiveTrue();
 
@@ -96,7 +209,23 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // Admin queries - include inactive products
     List<Product> findByActiveFalse();
 
+    // Stream active products for the catalog export as unmanaged rows, read from a cursor 1000 rows at a time
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.stefan.ecommerce.dto.ProductExportRow(p.id, p.name, p.description, p.price, p.stockQuantity, p.imageUrl, " +
+            "(SELECT LISTAGG(c.name, '|') WITHIN GROUP (ORDER BY c.name) FROM p.categories c)) " +
+            "FROM Product p WHERE p.active = true ORDER BY p.id")
+    Stream<ProductExportRow> streamActiveForExport();
+
     // Find all products with their categories (for admin)
     @Query("SELECT p FROM Product p LEFT JOIN FETCH p.categories")
     List<Product> findAllWithCategories();
-}
\ No newline at end of file
+
+    // Find some products with their categories (in-memory indexes re-indexing a changed category)
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.categories WHERE p.id IN :ids")
+    List<Product> findAllWithCategoriesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Version of everything the product details page shows: the product and its categories
+    @Query("SELECT new com.stefan.ecommerce.dto.ContentVersion(COUNT(c), p.updatedAt, MAX(c.updatedAt)) " +
+            "FROM Product p LEFT JOIN p.categories c WHERE p.id = :id GROUP BY p.id, p.updatedAt")
+    Optional<ContentVersion> findDetailVersionById(@Param("id") Long id);
+}
@@ -0,0 +1,132 @@
+package com.stefan.ecommerce.repositories;
+
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.PriceRange;
+import com.stefan.ecommerce.dto.ProductQuery;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.CategoryClosure;
+import com.stefan.ecommerce.entities.Product;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Criteria for ProductRepository's JpaSpecificationExecutor methods. Every criterion of a
+ * ProductQuery becomes one predicate of a single WHERE clause:
+ * <ul>
+ *     <li>categories are an EXISTS over product_categories, so no DISTINCT is needed and the
+ *     count query stays cheap (category_id, product_id index); subtrees add category_closure</li>
+ *     <li>price bounds and sorting use the (active, price, id) and other (active, key, id) indexes</li>
+ *     <li>search terms are case-insensitive substrings; on Postgres the trigram indexes from
+ *     db/postgresql/product-query.sql serve them</li>
+ * </ul>
+ */
+public final class ProductSpecifications {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    private ProductSpecifications() {
+    }
+
+    /**
+     * Active products matching every criterion of the query
+     */
+    public static Specification<Product> matching(ProductQuery query) {
+        return (root, criteria, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.isTrue(root.get("active")));
+
+            if (query.searchTerm() != null) {
+                String pattern = containsPattern(query.searchTerm());
+                predicates.add(cb.or(
+                        cb.like(cb.lower(root.get("name")), pattern, LIKE_ESCAPE),
+                        cb.like(cb.lower(root.get("description")), pattern, LIKE_ESCAPE)));
+            }
+
+            CatalogFilter filter = query.filter();
+            if (!filter.categoryIds().isEmpty()) {
+                Subquery<Long> linked = criteria.subquery(Long.class);
+                Root<Product> product = linked.correlate(root);
+                Join<Product, Category> category = product.join("categories");
+                linked.select(category.get("id")).where(category.get("id").in(filter.categoryIds()));
+                predicates.add(cb.exists(linked));
+            }
+
+            Expression<BigDecimal> price = root.get("price");
+            PriceRange range = filter.priceRange();
+            if (range != null && range.getMin() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(price, range.getMin()));
+            }
+            if (range != null && range.getMax() != null) {
+                predicates.add(cb.lessThan(price, range.getMax()));
+            }
+            if (query.minPrice() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(price, query.minPrice()));
+            }
+            if (query.maxPrice() != null) {
+                predicates.add(cb.lessThanOrEqualTo(price, query.maxPrice()));
+            }
+
+            if (filter.inStockOnly()) {
+                predicates.add(cb.greaterThan(root.get("stockQuantity"), 0));
+            }
+
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Active products in a category or any category below it, the criteria form of
+     * ProductRepository.IN_CATEGORY_SUBTREE for keyset scrolling
+     */
+    public static Specification<Product> activeInCategorySubtree(Long categoryId) {
+        return (root, criteria, cb) -> {
+            Subquery<Long> linked = criteria.subquery(Long.class);
+            Root<Product> product = linked.correlate(root);
+            Join<Product, Category> category = product.join("categories");
+            Root<CategoryClosure> path = linked.from(CategoryClosure.class);
+            linked.select(path.get("descendantId")).where(
+                    cb.equal(path.get("descendantId"), category.get("id")),
+                    cb.equal(path.get("ancestorId"), categoryId));
+            return cb.and(cb.isTrue(root.get("active")), cb.exists(linked));
+        };
+    }
+
+    /**
+     * Active products whose name contains the given text, ignoring case
+     */
+    public static Specification<Product> activeWithNameContaining(String name) {
+        return (root, criteria, cb) -> cb.and(
+                cb.isTrue(root.get("active")),
+                cb.like(cb.lower(root.get("name")), containsPattern(name), LIKE_ESCAPE));
+    }
+
+    /**
+     * Active products with fewer units in stock than the threshold
+     */
+    public static Specification<Product> activeWithStockBelow(int threshold) {
+        return (root, criteria, cb) -> cb.and(
+                cb.isTrue(root.get("active")),
+                cb.lessThan(root.get("stockQuantity"), threshold));
+    }
+
+    /**
+     * LIKE pattern for a literal substring; % and _ typed by the user match themselves
+     */
+    static String containsPattern(String text) {
+        String literal = text.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + literal + "%";
+    }
+}
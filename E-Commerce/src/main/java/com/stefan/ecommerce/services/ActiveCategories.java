@@ -0,0 +1,104 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.CategoryView;
+import com.stefan.ecommerce.entities.CacheVersion;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.repositories.CacheVersionRepository;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The active categories, held as an immutable snapshot that is swapped whole. Catalog, search
+ * and admin pages read it without touching the database or locking. CategoryService marks
+ * every category write in the cache_versions table; this node rebuilds right after its own
+ * writes commit, and other nodes notice the new version on their next poll.
+ */
+@Component
+public class ActiveCategories {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveCategories.class);
+
+    static final String VERSION_NAME = "categories";
+
+    /**
+     * The categories as of a stored version
+     */
+    public record Snapshot(long version, List<CategoryView> categories) {
+    }
+
+    private final CategoryRepository categoryRepository;
+    private final CacheVersionRepository cacheVersionRepository;
+
+    private volatile Snapshot snapshot;
+
+    public ActiveCategories(CategoryRepository categoryRepository, CacheVersionRepository cacheVersionRepository) {
+        this.categoryRepository = categoryRepository;
+        this.cacheVersionRepository = cacheVersionRepository;
+    }
+
+    /**
+     * Active categories in id order
+     */
+    public List<CategoryView> list() {
+        return current().categories();
+    }
+
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        return current != null ? current : rebuild();
+    }
+
+    /**
+     * Record a category write; runs in the writer's transaction, so the version only moves if it commits
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markChanged() {
+        if (cacheVersionRepository.increment(VERSION_NAME) == 0) {
+            cacheVersionRepository.save(new CacheVersion(VERSION_NAME, 1));
+        }
+    }
+
+    /**
+     * Reload from the database. The version is read first: a write landing in between leaves
+     * the snapshot at the older version, so the next poll loads it again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized Snapshot rebuild() {
+        long version = cacheVersionRepository.findVersion(VERSION_NAME).orElse(0L);
+        List<CategoryView> categories = categoryRepository.findByActiveTrue().stream()
+                .map(CategoryView::from)
+                .sorted(Comparator.comparing(CategoryView::id))
+                .toList();
+        snapshot = new Snapshot(version, categories);
+        logger.info("Active category snapshot built: {} categories at version {}", categories.size(), version);
+        return snapshot;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Pick up category writes made on other nodes
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.categories.version-poll-interval:PT5S}",
+            initialDelayString = "${ecommerce.categories.version-poll-interval:PT5S}")
+    public void poll() {
+        long stored = cacheVersionRepository.findVersion(VERSION_NAME).orElse(0L);
+        if (stored != current().version()) {
+            rebuild();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of the public catalog, bumped once a product or category write has committed.
+ * Anything derived from the catalog can be keyed by it and goes stale on the next write.
+ */
+@Component
+public class CatalogVersion {
+
+    // Seeded from the clock so versions from an earlier run are never reused
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    public long current() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        version.incrementAndGet();
+    }
+}
@@ -0,0 +1,110 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains categories.active_product_count, so category listings read their counts instead of
+ * loading every product. Writers take a product's counted categories before changing it and
+ * hand them back afterwards; the difference becomes relative UPDATEs in the writer's transaction.
+ * A scheduled reconciliation repairs drift left by writes that bypass the services.
+ */
+@Component
+public class CategoryProductCounts {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryProductCounts.class);
+
+    private final CategoryRepository categoryRepository;
+
+    public CategoryProductCounts(CategoryRepository categoryRepository) {
+        this.categoryRepository = categoryRepository;
+    }
+
+    /**
+     * Categories whose count includes the product: all of its categories while it is active, none otherwise
+     */
+    public Set<Long> countedIn(Product product) {
+        Set<Long> categoryIds = new HashSet<>();
+        if (Boolean.TRUE.equals(product.getActive())) {
+            product.getCategories().forEach(category -> categoryIds.add(category.getId()));
+        }
+        return categoryIds;
+    }
+
+    /**
+     * Move the product's contribution from the categories it counted in before to the ones it counts in now
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void update(Set<Long> before, Product product) {
+        update(before, countedIn(product));
+    }
+
+    /**
+     * Move a product's contribution between two sets of counted categories; an empty set removes it
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void update(Set<Long> before, Set<Long> after) {
+        List<Long> left = new ArrayList<>(before);
+        left.removeAll(after);
+        List<Long> joined = new ArrayList<>(after);
+        joined.removeAll(before);
+
+        if (!left.isEmpty()) {
+            categoryRepository.adjustActiveProductCount(left, -1);
+        }
+        if (!joined.isEmpty()) {
+            categoryRepository.adjustActiveProductCount(joined, 1);
+        }
+    }
+
+    /**
+     * Count newly linked active products, given as category id -> products added; used by bulk writers
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(Map<Long, Integer> addedByCategory) {
+        // One UPDATE per distinct amount, usually a handful per bulk write
+        Map<Integer, List<Long>> categoriesByAmount = new HashMap<>();
+        addedByCategory.forEach((categoryId, amount) -> {
+            if (amount != 0) {
+                categoriesByAmount.computeIfAbsent(amount, key -> new ArrayList<>()).add(categoryId);
+            }
+        });
+        categoriesByAmount.forEach((amount, categoryIds) -> categoryRepository.adjustActiveProductCount(categoryIds, amount));
+    }
+
+    /**
+     * Count a status change of many products at once; call it before their active flags are written
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanging(Collection<Long> productIds, boolean active) {
+        categoryRepository.adjustActiveProductCountForStatusChange(productIds, active, active ? 1 : -1);
+    }
+
+    /**
+     * Recount every category whose stored count drifted from its links and report how many were fixed
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.category-counts.reconcile-interval:PT1H}",
+            initialDelayString = "${ecommerce.category-counts.reconcile-interval:PT1H}")
+    @Transactional
+    public int reconcile() {
+        int repaired = categoryRepository.reconcileActiveProductCounts();
+        if (repaired > 0) {
+            logger.warn("Repaired the active product count of {} categories", repaired);
+        }
+        return repaired;
+    }
+}
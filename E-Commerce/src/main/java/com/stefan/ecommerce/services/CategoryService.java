@@ -1,40 +1,70 @@
 package com.stefan.ecommerce.services;
 
+import com.stefan.ecommerce.dto.CategoryView;
+import com.stefan.ecommerce.dto.ContentVersion;
+import com.stefan.ecommerce.dto.ProductQuery;
+import com.stefan.ecommerce.dto.ProductSnapshot;
 import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.CategoryClosure;
 import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.CategoryClosureRepository;
 import com.stefan.ecommerce.repositories.CategoryRepository;
 import com.stefan.ecommerce.repositories.ProductRepository;
+import com.stefan.ecommerce.repositories.ProductSpecifications;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CategoryProductCounts categoryProductCounts;
+    private final ActiveCategories activeCategories;
 
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository, ProductRepository productRepository) {
+    public CategoryService(CategoryRepository categoryRepository, CategoryClosureRepository categoryClosureRepository,
+                           ProductRepository productRepository, ApplicationEventPublisher eventPublisher,
+                           CategoryProductCounts categoryProductCounts, ActiveCategories activeCategories) {
         this.categoryRepository = categoryRepository;
+        this.categoryClosureRepository = categoryClosureRepository;
         this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+        this.categoryProductCounts = categoryProductCounts;
+        this.activeCategories = activeCategories;
     }
 
     // ==================== CATEGORY CREATION & MANAGEMENT ====================
 
     /**
-     * Create a new category
+     * Create a new top-level category
      */
     public Category createCategory(String name, String description, String imageUrl) {
+        return createCategory(name, description, imageUrl, null);
+    }
+
+    /**
+     * Create a new category under a parent, or at the top level when parentId is null
+     */
+    public Category createCategory(String name, String description, String imageUrl, Long parentId) {
         validateCategoryData(name);
 
         // Check if category name already exists
@@ -49,8 +79,59 @@ public class CategoryService {
         category.setActive(true);
         category.setCreatedAt(LocalDateTime.now());
         category.setUpdatedAt(LocalDateTime.now());
+        if (parentId != null) {
+            // The new paths are copied from the parent's, which a concurrent move could be rewriting
+            categoryRepository.lockTree();
+            category.setParent(categoryRepository.findById(parentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Parent category not found: " + parentId)));
+        }
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        categoryClosureRepository.saveAndFlush(new CategoryClosure(saved.getId(), saved.getId(), 0));
+        if (parentId != null) {
+            categoryClosureRepository.insertPathsUnder(saved.getId(), parentId);
+        }
+        return publishChange(saved);
+    }
+
+    /**
+     * Move a category, with everything below it, under a new parent, or to the top level when
+     * newParentId is null. The closure rows of the whole subtree are rewritten with two statements.
+     * The tree stays locked from the cycle check to the commit: two moves checked against the same
+     * tree could otherwise each pass and together close a loop (A under B, B under A).
+     */
+    public Category moveCategory(Long categoryId, Long newParentId) {
+        categoryRepository.lockTree();
+        Category category = categoryRepository.findById(categoryId)
+                .orElseThrow(() -> new IllegalArgumentException("Category not found: " + categoryId));
+
+        Category newParent = null;
+        if (newParentId != null) {
+            newParent = categoryRepository.findById(newParentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Parent category not found: " + newParentId));
+            if (categoryClosureRepository.existsByAncestorIdAndDescendantId(categoryId, newParentId)) {
+                throw new IllegalArgumentException("Cannot move category " + categoryId + " under itself or its subcategory " + newParentId);
+            }
+        }
+
+        Category oldParent = category.getParent();
+        if (Objects.equals(oldParent != null ? oldParent.getId() : null, newParentId)) {
+            return category;
+        }
+
+        categoryClosureRepository.detachSubtree(categoryId);
+        if (newParentId != null) {
+            categoryClosureRepository.attachSubtree(categoryId, newParentId);
+        }
+
+        // The old parent's subtree lost these categories, so its page version has to move too
+        if (oldParent != null) {
+            oldParent.setUpdatedAt(LocalDateTime.now());
+            publishChange(oldParent);
+        }
+        category.setParent(newParent);
+        category.setUpdatedAt(LocalDateTime.now());
+        return publishChange(categoryRepository.save(category));
     }
 
     /**
@@ -72,7 +153,7 @@ public class CategoryService {
         category.setImageUrl(imageUrl);
         category.setUpdatedAt(LocalDateTime.now());
 
-        return categoryRepository.save(category);
+        return publishChange(categoryRepository.save(category));
     }
 
     /**
@@ -87,6 +168,16 @@ public class CategoryService {
         }
     }
 
+    /**
+     * Notify in-memory catalog views of a category write; listeners run after commit and
+     * other nodes see the stored version move
+     */
+    private Category publishChange(Category category) {
+        activeCategories.markChanged();
+        eventPublisher.publishEvent(new CategoryChangedEvent(category.getId()));
+        return category;
+    }
+
     // ==================== CATEGORY RETRIEVAL ====================
 
     /**
@@ -97,6 +188,46 @@ public class CategoryService {
         return categoryRepository.findById(id);
     }
 
+    /**
+     * Version of a category's product page, answered without loading the category
+     */
+    @Transactional(readOnly = true)
+    public Optional<ContentVersion> getCategoryPageVersion(Long id) {
+        return categoryRepository.findPageVersionById(id);
+    }
+
+    /**
+     * Version of the active category listing
+     */
+    @Transactional(readOnly = true)
+    public ContentVersion getActiveCategoriesVersion() {
+        return categoryRepository.findActiveListingVersion();
+    }
+
+    /**
+     * Get the active direct subcategories of a category
+     */
+    @Transactional(readOnly = true)
+    public List<Category> findSubcategories(Long categoryId) {
+        return categoryRepository.findByParentIdAndActiveTrueOrderByNameAsc(categoryId);
+    }
+
+    /**
+     * Get the categories above a category, top-level first (for breadcrumbs)
+     */
+    @Transactional(readOnly = true)
+    public List<Category> findAncestors(Long categoryId) {
+        return categoryRepository.findAncestors(categoryId);
+    }
+
+    /**
+     * Check if a category has subcategories, active or not
+     */
+    @Transactional(readOnly = true)
+    public boolean hasSubcategories(Long categoryId) {
+        return categoryRepository.existsByParentId(categoryId);
+    }
+
     /**
      * Find category by ID with products
      */
@@ -114,11 +245,11 @@ public class CategoryService {
     }
 
     /**
-     * Get all active categories
+     * Get all active categories from the in-memory snapshot, without a transaction
      */
-    @Transactional(readOnly = true)
-    public List<Category> findAllActiveCategories() {
-        return categoryRepository.findByActiveTrue();
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<CategoryView> findAllActiveCategories() {
+        return activeCategories.list();
     }
 
     /**
@@ -248,7 +379,7 @@ public class CategoryService {
 
         category.setActive(true);
         category.setUpdatedAt(LocalDateTime.now());
-        categoryRepository.save(category);
+        publishChange(categoryRepository.save(category));
     }
 
     /**
@@ -260,7 +391,7 @@ public class CategoryService {
 
         category.setActive(false);
         category.setUpdatedAt(LocalDateTime.now());
-        categoryRepository.save(category);
+        publishChange(categoryRepository.save(category));
     }
 
     // ==================== PRODUCT MANAGEMENT ====================
@@ -275,10 +406,14 @@ public class CategoryService {
         Product product = productRepository.findByIdWithCategories(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         category.addProduct(product);
         category.setUpdatedAt(LocalDateTime.now());
+        categoryProductCounts.update(counted, product);
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        eventPublisher.publishEvent(ProductChangedEvent.of(ProductSnapshot.from(product)));
+        return saved;
     }
 
     /**
@@ -291,10 +426,14 @@ public class CategoryService {
         Product product = productRepository.findByIdWithCategories(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         category.removeProduct(product);
         category.setUpdatedAt(LocalDateTime.now());
+        categoryProductCounts.update(counted, product);
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        eventPublisher.publishEvent(ProductChangedEvent.of(ProductSnapshot.from(product)));
+        return saved;
     }
 
     /**
@@ -302,7 +441,7 @@ public class CategoryService {
      */
     @Transactional(readOnly = true)
     public List<Product> getProductsInCategory(Long categoryId) {
-        return productRepository.findByCategoryIdAndActiveTrue(categoryId);
+        return productRepository.findAll(ProductSpecifications.matching(ProductQuery.inCategory(categoryId)));
     }
 
     /**
@@ -388,31 +527,44 @@ public class CategoryService {
     // ==================== BULK OPERATIONS ====================
 
     /**
-     * Activate multiple categories
+     * Activate multiple categories with one UPDATE per batch of ids; unknown ids are skipped
      */
-    public void activateCategories(List<Long> categoryIds) {
-        for (Long categoryId : categoryIds) {
-            activateCategory(categoryId);
-        }
+    public int activateCategories(List<Long> categoryIds) {
+        return setCategoriesActive(categoryIds, true);
+    }
+
+    /**
+     * Deactivate multiple categories with one UPDATE per batch of ids; unknown ids are skipped
+     */
+    public int deactivateCategories(List<Long> categoryIds) {
+        return setCategoriesActive(categoryIds, false);
     }
 
     /**
-     * Deactivate multiple categories
+     * Delete categories that have no products (soft delete, one UPDATE)
      */
-    public void deactivateCategories(List<Long> categoryIds) {
-        for (Long categoryId : categoryIds) {
-            deactivateCategory(categoryId);
+    public int deleteEmptyCategories() {
+        return publishChanges(categoryRepository.deactivateEmptyCategories(LocalDateTime.now()));
+    }
+
+    private int setCategoriesActive(List<Long> categoryIds, boolean active) {
+        LocalDateTime now = LocalDateTime.now();
+        int changed = 0;
+        for (List<Long> batch : IdBatches.of(categoryIds)) {
+            changed += categoryRepository.updateActiveByIdIn(batch, active, now);
         }
+        return publishChanges(changed);
     }
 
     /**
-     * Delete categories that have no products
+     * One event for a whole bulk write, so catalog views rebuild once
      */
-    public void deleteEmptyCategories() {
-        List<Category> emptyCategories = findEmptyCategories();
-        for (Category category : emptyCategories) {
-            deactivateCategory(category.getId());
+    private int publishChanges(int changed) {
+        if (changed > 0) {
+            activeCategories.markChanged();
+            eventPublisher.publishEvent(CategoryChangedEvent.several());
         }
+        return changed;
     }
 
     // ==================== DELETE CATEGORY ====================
@@ -435,15 +587,14 @@ public class CategoryService {
      * Force delete category (removes from all products first)
      */
     public void forceDeleteCategory(Long categoryId) {
-        Category category = categoryRepository.findByIdWithProducts(categoryId)
-                .orElseThrow(() -> new IllegalArgumentException("Category not found: " + categoryId));
-
-        // Remove category from all products
-        for (Product product : category.getProducts()) {
-            product.getCategories().remove(category);
-            productRepository.save(product);
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new IllegalArgumentException("Category not found: " + categoryId);
         }
 
+        // Remove category from all products with one join-table DELETE; no other category's count changes
+        categoryRepository.unlinkAllProducts(categoryId);
+        categoryRepository.clearActiveProductCount(categoryId);
+
         // Now delete the category
         deactivateCategory(categoryId);
     }
@@ -452,6 +603,8 @@ public class CategoryService {
      * Permanently delete category (use with caution)
      */
     public void permanentlyDeleteCategory(Long categoryId) {
+        // No subcategory can be created or moved under it between the check and the delete
+        categoryRepository.lockTree();
         if (!categoryRepository.existsById(categoryId)) {
             throw new IllegalArgumentException("Category not found: " + categoryId);
         }
@@ -462,7 +615,14 @@ public class CategoryService {
             throw new IllegalArgumentException("Cannot permanently delete category with products. " +
                     "Remove all products first.");
         }
+        if (hasSubcategories(categoryId)) {
+            throw new IllegalArgumentException("Cannot permanently delete category with subcategories. " +
+                    "Move or delete them first.");
+        }
 
+        categoryClosureRepository.deleteByDescendant(categoryId);
         categoryRepository.deleteById(categoryId);
+        activeCategories.markChanged();
+        eventPublisher.publishEvent(new CategoryChangedEvent(categoryId));
     }
 }
\ No newline at end of file
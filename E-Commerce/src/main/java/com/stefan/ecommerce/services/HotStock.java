@@ -0,0 +1,369 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Stock of flash-sale products, held in memory so orders for them do not all queue on one
+ * products row. A hot product's stock is read from the database once and split across striped
+ * counters; orders take units from one stripe with a compare-and-set. What was sold is written
+ * back to products.stock_quantity with one relative UPDATE per product on a schedule, when the
+ * product stops being hot and at shutdown. ProductService routes the stock calls of hot products
+ * here and keeps using the database for everything else.
+ * <p>
+ * The counters belong to this node: flag a product as hot on the one node that takes its orders.
+ */
+@Component
+public class HotStock {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotStock.class);
+
+    // Stripes sit this many longs apart, so neighbouring stripes do not share a cache line
+    private static final int PADDING = 8;
+
+    /**
+     * The outcome of taking units from a product's in-memory stock
+     */
+    public enum Take {
+        TAKEN,
+        INSUFFICIENT,
+        // The product is not hot; its stock lives in the database
+        NOT_HOT
+    }
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final List<Long> configuredProductIds;
+    private final int stripes;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    // Counters that stopped being hot; flushed once more in case an order finished after their last flush
+    private final Collection<Counter> retired = ConcurrentHashMap.newKeySet();
+
+    public HotStock(ProductRepository productRepository,
+                    PlatformTransactionManager transactionManager,
+                    ApplicationEventPublisher eventPublisher,
+                    @Value("${ecommerce.stock.hot.products:}") List<Long> configuredProductIds,
+                    @Value("${ecommerce.stock.hot.stripes:0}") int stripes) {
+        this.productRepository = productRepository;
+        // Write-backs commit on their own: a caller rolling back must not undo sales already taken off the counters
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.configuredProductIds = configuredProductIds;
+        // A power of two at least as large as the number of cores
+        int wanted = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.stripes = Integer.highestOneBit(Math.max(wanted - 1, 1)) << 1;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void enableConfigured() {
+        configuredProductIds.forEach(this::enable);
+    }
+
+    /**
+     * Start serving the product's stock from memory, beginning with what the database holds now
+     */
+    public synchronized void enable(Long productId) {
+        if (counters.containsKey(productId)) {
+            return;
+        }
+        int stock = productRepository.findStockQuantityById(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+        counters.put(productId, new Counter(productId, stock, stripes));
+        logger.info("Product {} is hot: {} units over {} stripes", productId, stock, stripes);
+    }
+
+    /**
+     * Write the product's sales back and return its stock to the database
+     */
+    public synchronized void disable(Long productId) {
+        Counter counter = counters.get(productId);
+        if (counter == null) {
+            return;
+        }
+        // Orders arriving from here on are turned away until the sales are written back
+        counter.close();
+        flush(counter);
+        counters.remove(productId);
+        retired.add(counter);
+    }
+
+    /**
+     * Write the product's sales back and turn its orders away until the current transaction ends,
+     * then start the counters over from the stock the database holds by then. For a transaction
+     * that sets the stored stock of a hot product: orders refused meanwhile never reach the row
+     * behind the transaction's back, and a rollback leaves the counters in step with the row.
+     */
+    public synchronized void suspend(Long productId) {
+        Counter counter = counters.get(productId);
+        if (counter == null || counter.closed) {
+            return;
+        }
+        counter.close();
+        try {
+            writeBack(counter);
+        } finally {
+            afterCompletion(status -> reopen(productId, counter));
+        }
+    }
+
+    private synchronized void reopen(Long productId, Counter suspended) {
+        if (counters.get(productId) != suspended) {
+            // Disabled in the meantime
+            return;
+        }
+        // Sales the write-back could not store stay pending on the new counters
+        long unwritten = suspended.pending.sumThenReset();
+        Integer stock = transactionTemplate.execute(status -> productRepository.findStockQuantityById(productId).orElse(null));
+        if (stock == null) {
+            counters.remove(productId);
+            return;
+        }
+        Counter counter = new Counter(productId, (int) Math.max(stock - unwritten, 0), stripes);
+        counter.pending.add(unwritten);
+        counters.put(productId, counter);
+        retired.add(suspended);
+    }
+
+    public boolean isHot(Long productId) {
+        return counters.containsKey(productId);
+    }
+
+    /**
+     * Take quantity units, without locks unless the units are spread too thinly across the stripes.
+     * The counters are not transactional: units taken inside a transaction come back if it rolls back.
+     */
+    public Take take(Long productId, int quantity) {
+        Counter counter = counters.get(productId);
+        if (counter == null) {
+            return Take.NOT_HOT;
+        }
+        if (!counter.take(quantity)) {
+            return Take.INSUFFICIENT;
+        }
+        afterCompletion(status -> {
+            if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                giveBack(productId, quantity);
+            }
+        });
+        return Take.TAKEN;
+    }
+
+    /**
+     * Undo a take whose transaction rolled back. The counter it came from may have been suspended,
+     * disabled or retired since, and its sale written back, so the units go to whatever the product
+     * holds now: its current counter, whose write-back returns them to the row, or the row itself
+     * once the product is no longer hot.
+     */
+    private synchronized void giveBack(Long productId, int quantity) {
+        Counter counter = counters.get(productId);
+        if (counter != null && counter.closed) {
+            // Suspended: no units for orders until it reopens, from the row less what is pending
+            counter.pending.add(-quantity);
+            return;
+        }
+        if (counter != null) {
+            counter.put(quantity);
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (productRepository.increaseStock(productId, quantity, LocalDateTime.now()) == 0) {
+                    return;
+                }
+                productRepository.findById(productId).ifPresent(product ->
+                        eventPublisher.publishEvent(ProductChangedEvent.of(ProductSnapshot.from(product))));
+            });
+        } catch (RuntimeException e) {
+            logger.error("Could not return {} units of product {} taken by a rolled back transaction", quantity, productId, e);
+        }
+    }
+
+    /**
+     * Put quantity units back, for a cancelled order or a restock; inside a transaction they arrive
+     * once it commits. False if the product is not hot
+     */
+    public boolean put(Long productId, int quantity) {
+        Counter counter = counters.get(productId);
+        if (counter == null || counter.closed) {
+            return false;
+        }
+        afterCompletion(status -> {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                counter.put(quantity);
+            }
+        });
+        return true;
+    }
+
+    // Outside a transaction the action runs right away, as if committed
+    private static void afterCompletion(IntConsumer action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.accept(TransactionSynchronization.STATUS_COMMITTED);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status);
+            }
+        });
+    }
+
+    /**
+     * Units left of a hot product, including sales not yet written back
+     */
+    public OptionalInt available(Long productId) {
+        Counter counter = counters.get(productId);
+        return counter != null ? OptionalInt.of((int) counter.available()) : OptionalInt.empty();
+    }
+
+    /**
+     * Write what every hot product sold since the last flush back to products.stock_quantity
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.stock.hot.flush-interval:PT1S}",
+            initialDelayString = "${ecommerce.stock.hot.flush-interval:PT1S}")
+    public void flush() {
+        counters.values().forEach(this::flush);
+        List<Counter> done = new ArrayList<>(retired);
+        done.forEach(this::flush);
+        retired.removeAll(done);
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void flushOnShutdown() {
+        counters.values().forEach(Counter::close);
+        flush();
+    }
+
+    private void flush(Counter counter) {
+        try {
+            writeBack(counter);
+        } catch (RuntimeException e) {
+            logger.error("Could not write back the stock of hot product {}", counter.productId, e);
+        }
+    }
+
+    private void writeBack(Counter counter) {
+        long sold = counter.pending.sumThenReset();
+        if (sold == 0) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // The units are gone already, so the stored stock stops at zero rather than refusing
+                if (productRepository.consumeStock(counter.productId, sold, LocalDateTime.now()) == 0) {
+                    logger.warn("Hot product {} disappeared with {} units sold", counter.productId, sold);
+                    return;
+                }
+                productRepository.findById(counter.productId).ifPresent(product ->
+                        eventPublisher.publishEvent(ProductChangedEvent.of(ProductSnapshot.from(product))));
+            });
+        } catch (RuntimeException e) {
+            // Keep the sales for the next write-back
+            counter.pending.add(sold);
+            throw e;
+        }
+    }
+
+    /**
+     * One product's units, striped; pending collects sales (and negative restocks) not written back yet
+     */
+    private static final class Counter {
+
+        private final Long productId;
+        private final AtomicLongArray units;
+        private final int mask;
+        private final LongAdder pending = new LongAdder();
+        private volatile boolean closed;
+
+        Counter(Long productId, int stock, int stripes) {
+            this.productId = productId;
+            this.units = new AtomicLongArray(stripes * PADDING);
+            this.mask = stripes - 1;
+            for (int i = 0; i < stripes; i++) {
+                units.set(i * PADDING, stock / stripes + (i < stock % stripes ? 1 : 0));
+            }
+        }
+
+        boolean take(int quantity) {
+            int start = ThreadLocalRandom.current().nextInt();
+            for (int i = 0; i <= mask; i++) {
+                int slot = ((start + i) & mask) * PADDING;
+                long left = units.get(slot);
+                while (left >= quantity) {
+                    if (units.compareAndSet(slot, left, left - quantity)) {
+                        pending.add(quantity);
+                        return true;
+                    }
+                    left = units.get(slot);
+                }
+            }
+            // No single stripe holds enough; gather them into one and try that once
+            return !closed && takeGathered(quantity);
+        }
+
+        private synchronized boolean takeGathered(int quantity) {
+            long total = 0;
+            for (int i = 0; i <= mask; i++) {
+                total += units.getAndSet(i * PADDING, 0);
+            }
+            boolean taken = total >= quantity;
+            if (taken) {
+                total -= quantity;
+                pending.add(quantity);
+            }
+            units.addAndGet(0, total);
+            return taken;
+        }
+
+        void put(int quantity) {
+            units.addAndGet((ThreadLocalRandom.current().nextInt() & mask) * PADDING, quantity);
+            pending.add(-quantity);
+        }
+
+        long available() {
+            long total = 0;
+            for (int i = 0; i <= mask; i++) {
+                total += units.get(i * PADDING);
+            }
+            return total;
+        }
+
+        void close() {
+            closed = true;
+            for (int i = 0; i <= mask; i++) {
+                units.set(i * PADDING, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.stefan.ecommerce.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Splits id lists for set-based bulk statements. Each batch becomes one IN list, kept far
+ * below the bind parameter limits of the databases (32767 on Postgres).
+ */
+final class IdBatches {
+
+    static final int SIZE = 1000;
+
+    private IdBatches() {
+    }
+
+    /**
+     * Distinct non-null ids in batches of at most SIZE, in first-seen order
+     */
+    static List<List<Long>> of(Collection<Long> ids) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.removeIf(Objects::isNull);
+
+        List<List<Long>> batches = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += SIZE) {
+            batches.add(distinct.subList(from, Math.min(from + SIZE, distinct.size())));
+        }
+        return batches;
+    }
+}
@@ -1,5 +1,6 @@
 package com.stefan.ecommerce.services;
 
+import com.stefan.ecommerce.dto.OrderLine;
 import com.stefan.ecommerce.entities.Order;
 import com.stefan.ecommerce.entities.OrderItem;
 import com.stefan.ecommerce.entities.Product;
@@ -9,25 +10,49 @@ import com.stefan.ecommerce.repositories.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 @Service
 @Transactional
 public class OrderService {
 
+    private static final String INSERT_ORDER = "INSERT INTO orders (id, order_number, user_id, status, total_amount, order_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_ORDER_ITEM = "INSERT INTO order_items (id, order_id, product_id, quantity, unit_price, subtotal) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
     @Autowired
     private OrderRepository orderRepository;
 
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private StockReservations stockReservations;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SequenceIds sequenceIds;
+
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
     }
@@ -36,6 +61,10 @@ public class OrderService {
         return orderRepository.findById(id);
     }
 
+    public Optional<Order> getOrderDetails(Long id) {
+        return orderRepository.findDetailsById(id);
+    }
+
     public Optional<Order> getOrderByOrderNumber(String orderNumber) {
         return orderRepository.findByOrderNumber(orderNumber);
     }
@@ -66,11 +95,71 @@ public class OrderService {
         return orderRepository.save(order);
     }
 
+    /**
+     * Place a confirmed order in a fixed number of statements however many lines it has: the products
+     * are loaded with one query, their stock is taken in one batch (in product id order), the total is
+     * computed once, and the order row and all of its items are inserted with JDBC, the items as one batch.
+     */
+    public Order checkout(User user, List<OrderLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one line");
+        }
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (OrderLine line : lines) {
+            if (line.productId() == null || line.quantity() <= 0) {
+                throw new IllegalArgumentException("Every line needs a product and a positive quantity");
+            }
+            quantities.merge(line.productId(), line.quantity(), Integer::sum);
+        }
+
+        Map<Long, Product> products = new HashMap<>();
+        productRepository.findAllById(quantities.keySet()).forEach(product -> products.put(product.getId(), product));
+        for (Long productId : quantities.keySet()) {
+            Product product = products.get(productId);
+            if (product == null) {
+                throw new IllegalArgumentException("Product not found: " + productId);
+            }
+            if (!Boolean.TRUE.equals(product.getActive())) {
+                throw new IllegalArgumentException("Product is no longer available: " + product.getName());
+            }
+        }
+
+        productService.decreaseStock(products.values(), quantities);
+
+        BigDecimal total = BigDecimal.ZERO;
+        Map<Long, BigDecimal> subtotals = new HashMap<>();
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            BigDecimal subtotal = products.get(line.getKey()).getPrice().multiply(BigDecimal.valueOf(line.getValue()));
+            subtotals.put(line.getKey(), subtotal);
+            total = total.add(subtotal);
+        }
+
+        // Ids come from the sequences up front, so nothing waits for a generated key
+        long orderId = sequenceIds.next("orders_seq");
+        jdbcTemplate.update(INSERT_ORDER, orderId, generateOrderNumber(), user.getId(), Order.OrderStatus.CONFIRMED.name(),
+                total, Timestamp.valueOf(LocalDateTime.now()));
+        long[] itemIds = sequenceIds.next("order_items_seq", quantities.size());
+        List<Object[]> items = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            items.add(new Object[]{itemIds[items.size()], orderId, line.getKey(), line.getValue(),
+                    products.get(line.getKey()).getPrice(), subtotals.get(line.getKey())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_ORDER_ITEM, items);
+
+        return orderRepository.findById(orderId).orElseThrow();
+    }
+
     public Order saveOrder(Order order) {
         return orderRepository.save(order);
     }
 
     public void deleteOrder(Long id) {
+        orderRepository.findLockedById(id).ifPresent(order -> {
+            if (order.isPending() && order.isReserved()) {
+                stockReservations.give(StockReservations.quantities(order.getOrderItems()));
+                stockReservations.forget(id);
+            }
+        });
         orderRepository.deleteById(id);
     }
 
@@ -130,10 +219,19 @@ public class OrderService {
         return orderRepository.findByStatusOrderByOrderDateDesc(Order.OrderStatus.CANCELLED);
     }
 
+    /**
+     * Confirm a pending order. A live stock hold becomes the sale; if it ran out, the stock is taken now
+     */
     public void confirmOrder(Long orderId) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
-        if (orderOpt.isPresent()) {
+        Optional<Order> orderOpt = orderRepository.findLockedById(orderId);
+        if (orderOpt.isPresent() && orderOpt.get().isPending()) {
             Order order = orderOpt.get();
+            if (!order.isReserved()) {
+                stockReservations.take(StockReservations.quantities(order.getOrderItems()));
+                order = orderRepository.findById(orderId).orElseThrow();
+            }
+            stockReservations.forget(orderId);
+            order.setReservedUntil(null);
             order.confirm();
             orderRepository.save(order);
         }
@@ -157,43 +255,87 @@ public class OrderService {
         }
     }
 
+    /**
+     * Cancel an order, putting back the stock of a live hold
+     */
     public void cancelOrder(Long orderId) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
-        if (orderOpt.isPresent()) {
+        Optional<Order> orderOpt = orderRepository.findLockedById(orderId);
+        if (orderOpt.isPresent() && orderOpt.get().canBeCancelled()) {
             Order order = orderOpt.get();
+            if (order.isPending() && order.isReserved()) {
+                stockReservations.give(StockReservations.quantities(order.getOrderItems()));
+                stockReservations.forget(orderId);
+                order = orderRepository.findById(orderId).orElseThrow();
+            }
+            order.setReservedUntil(null);
             order.cancel();
             orderRepository.save(order);
         }
     }
 
+    /**
+     * Add an item to a pending order and hold its stock. Each item added restarts the hold's TTL, and
+     * a hold that already ran out is taken again for the whole order.
+     */
     public void addOrderItem(Long orderId, Long productId, Integer quantity) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
-        Optional<Product> productOpt = productRepository.findById(productId);
-        
-        if (orderOpt.isPresent() && productOpt.isPresent()) {
-            Order order = orderOpt.get();
-            Product product = productOpt.get();
-            
-            OrderItem orderItem = new OrderItem(order, product, quantity, product.getPrice());
-            order.addOrderItem(orderItem);
-            
-            orderRepository.save(order);
+        Optional<Order> orderOpt = orderRepository.findLockedById(orderId);
+        if (orderOpt.isEmpty() || !productRepository.existsById(productId)) {
+            return;
+        }
+        Order order = orderOpt.get();
+        if (!order.isPending()) {
+            throw new IllegalArgumentException("Items can only be added to pending orders");
         }
+
+        SortedMap<Long, Integer> held = order.isReserved()
+                ? new TreeMap<>() : StockReservations.quantities(order.getOrderItems());
+        held.merge(productId, quantity, Integer::sum);
+        stockReservations.take(held);
+
+        order = orderRepository.findById(orderId).orElseThrow();
+        Product product = productRepository.findById(productId).orElseThrow();
+        OrderItem orderItem = new OrderItem(order, product, quantity, product.getPrice());
+        order.addOrderItem(orderItem);
+        order.setReservedUntil(stockReservations.hold(orderId));
+
+        orderRepository.save(order);
     }
 
     public void removeOrderItem(Long orderId, Long orderItemId) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
+        Optional<Order> orderOpt = orderRepository.findLockedById(orderId);
         if (orderOpt.isPresent()) {
             Order order = orderOpt.get();
+            Optional<OrderItem> removed = order.getOrderItems().stream()
+                    .filter(item -> item.getId().equals(orderItemId))
+                    .findFirst();
+            if (removed.isPresent() && order.isPending() && order.isReserved()) {
+                stockReservations.give(StockReservations.quantities(List.of(removed.get())));
+                order = orderRepository.findById(orderId).orElseThrow();
+            }
             order.getOrderItems().removeIf(item -> item.getId().equals(orderItemId));
             orderRepository.save(order);
         }
     }
 
     public void updateOrderItemQuantity(Long orderId, Long orderItemId, Integer newQuantity) {
-        Optional<Order> orderOpt = orderRepository.findById(orderId);
+        Optional<Order> orderOpt = orderRepository.findLockedById(orderId);
         if (orderOpt.isPresent()) {
             Order order = orderOpt.get();
+            // A held item takes or gives back the difference
+            if (order.isPending() && order.isReserved()) {
+                for (OrderItem item : order.getOrderItems()) {
+                    if (item.getId().equals(orderItemId)) {
+                        int difference = newQuantity - item.getQuantity();
+                        if (difference > 0) {
+                            stockReservations.take(new TreeMap<>(Map.of(item.getProduct().getId(), difference)));
+                        } else if (difference < 0) {
+                            stockReservations.give(new TreeMap<>(Map.of(item.getProduct().getId(), -difference)));
+                        }
+                        order = orderRepository.findById(orderId).orElseThrow();
+                        break;
+                    }
+                }
+            }
             for (OrderItem item : order.getOrderItems()) {
                 if (item.getId().equals(orderItemId)) {
                     item.setQuantity(newQuantity);
@@ -0,0 +1,41 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Evicts cached product details once a write has committed, so the next view reloads it.
+ * Every ProductService write path publishes a ProductChangedEvent.
+ */
+@Component
+public class ProductDetailCacheInvalidator {
+
+    private final Cache productDetails;
+
+    public ProductDetailCacheInvalidator(CacheManager cacheManager) {
+        this.productDetails = cacheManager.getCache(ProductService.PRODUCT_DETAILS_CACHE);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        productDetails.evict(event.productId());
+    }
+
+    /**
+     * Details embed category names, and a category change may touch any number of products
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        productDetails.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        productDetails.clear();
+    }
+}
@@ -0,0 +1,129 @@
+package com.stefan.ecommerce.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stefan.ecommerce.dto.CatalogFileFormat;
+import com.stefan.ecommerce.dto.ProductExportRow;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Catalog export for feed partners. Active products are read from a database cursor as
+ * unmanaged rows and written out as they arrive, so memory does not grow with the catalog.
+ */
+@Service
+public class ProductExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductExportService.class);
+
+    // Bytes buffered before a chunk goes out to the client
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "id,name,description,price,stock_quantity,image_url,categories";
+
+    private final ProductRepository productRepository;
+    private final ObjectMapper objectMapper;
+
+    public ProductExportService(ProductRepository productRepository, ObjectMapper objectMapper) {
+        this.productRepository = productRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Write every active product to the output and return how many were written
+     */
+    @Transactional(readOnly = true)
+    public long exportActiveProducts(CatalogFileFormat format, OutputStream output) throws IOException {
+        long started = System.nanoTime();
+        long written = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try (Stream<ProductExportRow> rows = productRepository.streamActiveForExport()) {
+            Iterator<ProductExportRow> iterator = rows.iterator();
+            if (format == CatalogFileFormat.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+                while (iterator.hasNext()) {
+                    writeCsv(writer, iterator.next());
+                    written++;
+                }
+            } else {
+                JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+                json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+                // Lines are separated by writeJson itself
+                json.setRootValueSeparator(null);
+                while (iterator.hasNext()) {
+                    writeJson(json, iterator.next());
+                    written++;
+                }
+                json.flush();
+            }
+        }
+        writer.flush();
+        logger.info("Exported {} products as {} in {} ms", written, format, (System.nanoTime() - started) / 1_000_000);
+        return written;
+    }
+
+    private static void writeCsv(Writer writer, ProductExportRow row) throws IOException {
+        writer.write(String.valueOf(row.id()));
+        writer.write(',');
+        writeCsvField(writer, row.name());
+        writer.write(',');
+        writeCsvField(writer, row.description());
+        writer.write(',');
+        writer.write(row.price().toPlainString());
+        writer.write(',');
+        writer.write(String.valueOf(row.stockQuantity()));
+        writer.write(',');
+        writeCsvField(writer, row.imageUrl());
+        writer.write(',');
+        writeCsvField(writer, row.categories());
+        writer.write('\n');
+    }
+
+    /**
+     * RFC 4180 quoting, only when the value needs it
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeJson(JsonGenerator json, ProductExportRow row) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", row.id());
+        json.writeStringField("name", row.name());
+        json.writeStringField("description", row.description());
+        json.writeNumberField("price", row.price());
+        json.writeNumberField("stockQuantity", row.stockQuantity());
+        json.writeStringField("imageUrl", row.imageUrl());
+        json.writeArrayFieldStart("categories");
+        if (row.categories() != null) {
+            for (String category : row.categories().split("\\|")) {
+                json.writeString(category);
+            }
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+}
@@ -0,0 +1,382 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.FacetCounts;
+import com.stefan.ecommerce.dto.PriceRange;
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Faceted filtering of active products with bitsets. Every indexed product gets a dense
+ * ordinal; each category, price range and the in-stock flag own a bitset over those
+ * ordinals, so a filter and the counts of every facet value are bitset intersections.
+ */
+@Component
+public class ProductFacetIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetIndex.class);
+
+    private static final PriceRange[] PRICE_RANGES = PriceRange.values();
+
+    private final ProductRepository productRepository;
+
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    // ordinal -> product, null for free ordinals
+    private final List<ProductSnapshot> products = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    private final BitSet all = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private final Map<Long, BitSet> categories = new HashMap<>();
+    // category id -> members of its bitset, so listing totals need no cardinality scan
+    private final Map<Long, Integer> categorySizes = new HashMap<>();
+    private final Map<PriceRange, BitSet> priceRanges = new EnumMap<>(PriceRange.class);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Product changes applied while a reload reads the database, replayed over what it read
+    // (null value: removed); null when no reload runs. Guarded by lock
+    private Map<Long, ProductSnapshot> changedDuringLoad;
+
+    public ProductFacetIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+        for (PriceRange range : PRICE_RANGES) {
+            priceRanges.put(range, new BitSet());
+        }
+    }
+
+    // ==================== MAINTENANCE ====================
+
+    /**
+     * Rebuild every bitset from the database
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        reload(productRepository::findAllWithCategories, snapshots -> {
+            ordinals.clear();
+            products.clear();
+            freeOrdinals.clear();
+            all.clear();
+            inStock.clear();
+            categories.clear();
+            categorySizes.clear();
+            priceRanges.values().forEach(BitSet::clear);
+            snapshots.forEach(this::indexUnlocked);
+        });
+        logger.info("Product facet index built: {} products, {} categories", all.cardinality(), categories.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.productId());
+        } else {
+            index(event.snapshot());
+        }
+    }
+
+    /**
+     * Deleting a category drops its product links without touching the products, so the
+     * products in its bitset are re-indexed. A bulk change naming no category rebuilds the index.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        if (event.categoryId() == null) {
+            rebuild();
+            return;
+        }
+        List<Long> productIds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            BitSet members = categories.get(event.categoryId());
+            if (members != null) {
+                members.stream().forEach(ordinal -> productIds.add(products.get(ordinal).id()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (productIds.isEmpty()) {
+            return;
+        }
+        reload(() -> productRepository.findAllWithCategoriesByIdIn(productIds), snapshots -> {
+            productIds.forEach(this::removeUnlocked);
+            snapshots.forEach(this::indexUnlocked);
+        });
+    }
+
+    /**
+     * Read products from the database and apply them under the write lock. Changes applied while
+     * the rows were read are replayed afterwards, as the rows may predate them. One reload at a time.
+     */
+    private synchronized void reload(Supplier<List<Product>> query, Consumer<List<ProductSnapshot>> apply) {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<ProductSnapshot> snapshots = null;
+        try {
+            snapshots = query.get().stream().map(ProductSnapshot::from).toList();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (snapshots != null) {
+                    apply.accept(snapshots);
+                    changedDuringLoad.forEach((productId, product) -> {
+                        if (product == null) {
+                            removeUnlocked(productId);
+                        } else {
+                            indexUnlocked(product);
+                        }
+                    });
+                }
+                changedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Add or replace a product; inactive products are removed from every facet
+     */
+    public void index(ProductSnapshot product) {
+        lock.writeLock().lock();
+        try {
+            indexUnlocked(product);
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(product.id(), product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(productId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexUnlocked(ProductSnapshot product) {
+        removeUnlocked(product.id());
+        if (!product.active()) {
+            return;
+        }
+
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = products.size();
+            products.add(product);
+        } else {
+            ordinal = freeOrdinals.pop();
+            products.set(ordinal, product);
+        }
+        ordinals.put(product.id(), ordinal);
+
+        all.set(ordinal);
+        if (product.isInStock()) {
+            inStock.set(ordinal);
+        }
+        for (Long categoryId : product.categoryIds()) {
+            categories.computeIfAbsent(categoryId, id -> new BitSet()).set(ordinal);
+            categorySizes.merge(categoryId, 1, Integer::sum);
+        }
+        PriceRange range = PriceRange.of(product.price());
+        if (range != null) {
+            priceRanges.get(range).set(ordinal);
+        }
+    }
+
+    private void removeUnlocked(Long productId) {
+        Integer ordinal = ordinals.remove(productId);
+        if (ordinal == null) {
+            return;
+        }
+        ProductSnapshot product = products.set(ordinal, null);
+        all.clear(ordinal);
+        inStock.clear(ordinal);
+        for (Long categoryId : product.categoryIds()) {
+            BitSet members = categories.get(categoryId);
+            members.clear(ordinal);
+            if (members.isEmpty()) {
+                categories.remove(categoryId);
+                categorySizes.remove(categoryId);
+            } else {
+                categorySizes.merge(categoryId, -1, Integer::sum);
+            }
+        }
+        priceRanges.values().forEach(members -> members.clear(ordinal));
+        freeOrdinals.push(ordinal);
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Ids of the products matching the filter in the requested order, with the facet counts
+     */
+    public Result search(CatalogFilter filter, Sort sort) {
+        lock.readLock().lock();
+        try {
+            BitSet matching = selected(filter);
+            List<ProductSnapshot> matches = new ArrayList<>(matching.cardinality());
+            for (int ordinal = matching.nextSetBit(0); ordinal >= 0; ordinal = matching.nextSetBit(ordinal + 1)) {
+                matches.add(products.get(ordinal));
+            }
+            matches.sort(comparator(sort));
+            return new Result(matches.stream().map(ProductSnapshot::id).toList(), countUnlocked(filter, matching));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Facet counts only, for listings that load their rows from the database
+     */
+    public FacetCounts counts(CatalogFilter filter) {
+        lock.readLock().lock();
+        try {
+            return countUnlocked(filter, selected(filter));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of active products, kept current by product events instead of a COUNT query
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of active products in a category, kept current by product events
+     */
+    public int categorySize(Long categoryId) {
+        lock.readLock().lock();
+        try {
+            return categorySizes.getOrDefault(categoryId, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet selected(CatalogFilter filter) {
+        BitSet matching = categoryMatches(filter);
+        matching.and(priceMatches(filter));
+        if (filter.inStockOnly()) {
+            matching.and(inStock);
+        }
+        return matching;
+    }
+
+    /**
+     * Each facet is counted against the other facets' selections (disjunctive faceting)
+     */
+    private FacetCounts countUnlocked(CatalogFilter filter, BitSet matching) {
+        BitSet byCategory = categoryMatches(filter);
+        BitSet byPrice = priceMatches(filter);
+
+        BitSet withoutCategory = (BitSet) byPrice.clone();
+        if (filter.inStockOnly()) {
+            withoutCategory.and(inStock);
+        }
+        Map<Long, Integer> categoryCounts = new HashMap<>();
+        categories.forEach((categoryId, members) -> categoryCounts.put(categoryId, intersectionSize(withoutCategory, members)));
+
+        BitSet withoutPrice = (BitSet) byCategory.clone();
+        if (filter.inStockOnly()) {
+            withoutPrice.and(inStock);
+        }
+        Map<PriceRange, Integer> priceCounts = new EnumMap<>(PriceRange.class);
+        priceRanges.forEach((range, members) -> priceCounts.put(range, intersectionSize(withoutPrice, members)));
+
+        byCategory.and(byPrice);
+        int inStockCount = intersectionSize(byCategory, inStock);
+
+        return new FacetCounts(categoryCounts, priceCounts, inStockCount, matching.cardinality());
+    }
+
+    private BitSet categoryMatches(CatalogFilter filter) {
+        if (filter.categoryIds().isEmpty()) {
+            return (BitSet) all.clone();
+        }
+        BitSet matching = new BitSet();
+        for (Long categoryId : filter.categoryIds()) {
+            BitSet members = categories.get(categoryId);
+            if (members != null) {
+                matching.or(members);
+            }
+        }
+        return matching;
+    }
+
+    private BitSet priceMatches(CatalogFilter filter) {
+        return (BitSet) (filter.priceRange() == null ? all : priceRanges.get(filter.priceRange())).clone();
+    }
+
+    private static int intersectionSize(BitSet left, BitSet right) {
+        BitSet intersection = (BitSet) left.clone();
+        intersection.and(right);
+        return intersection.cardinality();
+    }
+
+    /**
+     * Catalog sort options (name, price, createdAt) applied in memory, ties broken by id
+     */
+    private static Comparator<ProductSnapshot> comparator(Sort sort) {
+        Sort.Order order = sort.stream().findFirst().orElse(Sort.Order.asc("name"));
+        Comparator<ProductSnapshot> comparator = switch (order.getProperty()) {
+            case "price" -> Comparator.comparing(ProductSnapshot::price, Comparator.nullsLast(Comparator.naturalOrder()));
+            case "createdAt" -> Comparator.comparing(ProductSnapshot::createdAt, Comparator.nullsLast(Comparator.naturalOrder()));
+            default -> Comparator.comparing(ProductSnapshot::name, String.CASE_INSENSITIVE_ORDER);
+        };
+        if (order.isDescending()) {
+            comparator = comparator.reversed();
+        }
+        return comparator.thenComparing(ProductSnapshot::id);
+    }
+
+    public record Result(List<Long> productIds, FacetCounts counts) {
+    }
+}
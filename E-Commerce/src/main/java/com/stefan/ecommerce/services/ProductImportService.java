@@ -0,0 +1,424 @@
+package com.stefan.ecommerce.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stefan.ecommerce.dto.CatalogFileFormat;
+import com.stefan.ecommerce.dto.ImportReport;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Bulk product import from CSV or JSON Lines. The file is read one row at a time, categories
+ * are resolved by name from a map loaded once, and rows are inserted in JDBC batches with one
+ * transaction per chunk of rows. A chunk the database refuses rolls back alone and its rows are
+ * reported as rejected; the chunks around it are imported.
+ * In-memory catalog views are reloaded once at the end instead of per product.
+ */
+@Service
+public class ProductImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportService.class);
+
+    // Rejected rows described in the report; the rest are only counted
+    private static final int MAX_REPORTED_ERRORS = 20;
+    // products.image_url is a plain varchar(255)
+    private static final int MAX_IMAGE_URL_LENGTH = 255;
+
+    private static final String INSERT_PRODUCT = "INSERT INTO products (id, name, description, price, stock_quantity, " +
+            "image_url, active, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, true, ?, ?)";
+    private static final String INSERT_PRODUCT_CATEGORY = "INSERT INTO product_categories (product_id, category_id) VALUES (?, ?)";
+
+    private record ProductRow(String name, String description, BigDecimal price, int stockQuantity,
+                              String imageUrl, Set<Long> categoryIds) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIds sequenceIds;
+    private final TransactionTemplate transactionTemplate;
+    private final CategoryRepository categoryRepository;
+    private final CategoryProductCounts categoryProductCounts;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int chunkSize;
+
+    public ProductImportService(JdbcTemplate jdbcTemplate,
+                                SequenceIds sequenceIds,
+                                PlatformTransactionManager transactionManager,
+                                CategoryRepository categoryRepository,
+                                CategoryProductCounts categoryProductCounts,
+                                ApplicationEventPublisher eventPublisher,
+                                ObjectMapper objectMapper,
+                                @Value("${ecommerce.import.batch-size:500}") int batchSize,
+                                @Value("${ecommerce.import.chunk-size:10000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceIds = sequenceIds;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.categoryRepository = categoryRepository;
+        this.categoryProductCounts = categoryProductCounts;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.chunkSize = Math.max(chunkSize, batchSize);
+    }
+
+    /**
+     * Import every valid row of the file; invalid rows are skipped and reported
+     */
+    public ImportReport importProducts(InputStream input, CatalogFileFormat format) throws IOException {
+        long started = System.nanoTime();
+        Map<String, Long> categoryIds = new HashMap<>();
+        categoryRepository.findAll().forEach(category ->
+                categoryIds.put(category.getName().toLowerCase(Locale.ROOT), category.getId()));
+
+        long imported = 0;
+        RowReader rows;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            rows = new RowReader(reader, format, categoryIds);
+            while (rows.hasNext()) {
+                int firstLine = rows.nextLine;
+                long accepted = rows.accepted;
+                try {
+                    imported += transactionTemplate.execute(status -> writeChunk(rows));
+                } catch (DataAccessException e) {
+                    rows.rejectChunk(firstLine, rows.accepted - accepted, e);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (imported > 0) {
+                logger.info("Imported {} products in {} ms", imported, (System.nanoTime() - started) / 1_000_000);
+                eventPublisher.publishEvent(new CatalogReloadedEvent(imported));
+            }
+        }
+
+        ImportReport report = new ImportReport(imported, rows.rejected, List.copyOf(rows.errors),
+                Duration.ofNanos(System.nanoTime() - started));
+        logger.info("Import finished: {} products ({} rejected) in {} ms including the catalog reload, {} rows/s",
+                report.imported(), report.rejected(), report.elapsed().toMillis(), report.rowsPerSecond());
+        return report;
+    }
+
+    /**
+     * Insert up to chunkSize rows, batchSize at a time, in the caller's transaction.
+     * Category product counts are raised once per chunk, in the same transaction.
+     */
+    private int writeChunk(Iterator<ProductRow> rows) {
+        List<ProductRow> batch = new ArrayList<>(batchSize);
+        Map<Long, Integer> linked = new HashMap<>();
+        int written = 0;
+        while (written < chunkSize && rows.hasNext()) {
+            batch.add(rows.next());
+            written++;
+            if (batch.size() == batchSize) {
+                insertBatch(batch, linked);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertBatch(batch, linked);
+        }
+        categoryProductCounts.add(linked);
+        return written;
+    }
+
+    private void insertBatch(List<ProductRow> batch, Map<Long, Integer> linked) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long[] ids = sequenceIds.next("products_seq", batch.size());
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ProductRow row = batch.get(i);
+                ps.setLong(1, ids[i]);
+                ps.setString(2, row.name());
+                ps.setString(3, row.description());
+                ps.setBigDecimal(4, row.price());
+                ps.setInt(5, row.stockQuantity());
+                ps.setString(6, row.imageUrl());
+                ps.setTimestamp(7, now);
+                ps.setTimestamp(8, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+
+        List<Object[]> links = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            for (Long categoryId : batch.get(i).categoryIds()) {
+                links.add(new Object[]{ids[i], categoryId});
+                linked.merge(categoryId, 1, Integer::sum);
+            }
+        }
+        if (!links.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT_CATEGORY, links);
+        }
+    }
+
+    // ==================== PARSING ====================
+
+    /**
+     * Lazily parsed rows of the file. Rows that fail validation are counted and skipped.
+     */
+    private final class RowReader implements Iterator<ProductRow> {
+
+        private final BufferedReader reader;
+        private final CatalogFileFormat format;
+        private final Map<String, Long> categoryIds;
+        private Map<String, Integer> columns;
+        private int lineNumber;
+        private ProductRow next;
+        // Line of the row next() returns next, and of the last row it returned
+        int nextLine;
+        private int lastLine;
+        long accepted;
+        long rejected;
+        final List<String> errors = new ArrayList<>();
+
+        RowReader(BufferedReader reader, CatalogFileFormat format, Map<String, Long> categoryIds) {
+            this.reader = reader;
+            this.format = format;
+            this.categoryIds = categoryIds;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    lineNumber++;
+                    int startLine = lineNumber;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    if (format == CatalogFileFormat.CSV && columns == null) {
+                        readHeader(line);
+                        continue;
+                    }
+                    try {
+                        next = format == CatalogFileFormat.CSV ? parseCsv(line) : parseJson(line);
+                        nextLine = startLine;
+                    } catch (IllegalArgumentException e) {
+                        reject(startLine, e.getMessage());
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ProductRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ProductRow row = next;
+            next = null;
+            lastLine = nextLine;
+            accepted++;
+            return row;
+        }
+
+        private void reject(int line, String message) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + line + ": " + message);
+            }
+        }
+
+        /**
+         * The valid rows of a chunk from firstLine on were rolled back by the database
+         */
+        void rejectChunk(int firstLine, long rows, DataAccessException e) {
+            logger.warn("Import chunk from line {} rolled back: {} rows not imported", firstLine, rows, e);
+            rejected += rows;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Lines " + firstLine + "-" + lastLine + ": " + rows + " rows not imported: " +
+                        e.getMostSpecificCause().getMessage());
+            }
+        }
+
+        private ProductRow parseCsv(String line) throws IOException {
+            List<String> fields = readRecord(line);
+            String categories = field(fields, "categories");
+            return toRow(field(fields, "name"), field(fields, "description"), field(fields, "price"),
+                    field(fields, "stockquantity"), field(fields, "imageurl"),
+                    categories == null ? List.of() : List.of(categories.split("\\|")));
+        }
+
+        /**
+         * Column positions by name; a file without the required columns is not imported at all
+         */
+        private void readHeader(String line) throws IOException {
+            List<String> fields = readRecord(line);
+            columns = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                columns.put(fields.get(i).trim().toLowerCase(Locale.ROOT).replace("_", ""), i);
+            }
+            if (!columns.containsKey("name") || !columns.containsKey("price") || !columns.containsKey("stockquantity")) {
+                throw new IllegalArgumentException("CSV header must name the name, price and stock_quantity columns");
+            }
+        }
+
+        private List<String> readRecord(String line) throws IOException {
+            List<String> fields = splitCsv(line);
+            // A quoted field may span lines
+            while (fields == null) {
+                String continuation = reader.readLine();
+                if (continuation == null) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                lineNumber++;
+                line = line + "\n" + continuation;
+                fields = splitCsv(line);
+            }
+            return fields;
+        }
+
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private ProductRow parseJson(String line) {
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+            }
+            List<String> categories = new ArrayList<>();
+            node.path("categories").forEach(category -> categories.add(category.asText()));
+            return toRow(text(node, "name"), text(node, "description"), text(node, "price"),
+                    text(node, "stockQuantity"), text(node, "imageUrl"), categories);
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+
+        private ProductRow toRow(String name, String description, String price, String stockQuantity,
+                                 String imageUrl, List<String> categories) {
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("Product name cannot be empty");
+            }
+            if (name.length() > 200) {
+                throw new IllegalArgumentException("Product name cannot exceed 200 characters");
+            }
+
+            if (imageUrl != null && imageUrl.length() > MAX_IMAGE_URL_LENGTH) {
+                throw new IllegalArgumentException("Image URL cannot exceed " + MAX_IMAGE_URL_LENGTH + " characters");
+            }
+            if (price == null || stockQuantity == null) {
+                throw new IllegalArgumentException("Price and stock quantity are required");
+            }
+
+            BigDecimal parsedPrice;
+            int parsedStock;
+            try {
+                parsedPrice = new BigDecimal(price);
+                parsedStock = Integer.parseInt(stockQuantity);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Price and stock quantity must be numbers");
+            }
+            if (parsedPrice.signum() <= 0 || parsedPrice.scale() > 2 || parsedPrice.precision() - parsedPrice.scale() > 8) {
+                throw new IllegalArgumentException("Invalid price: " + price);
+            }
+            if (parsedStock < 0) {
+                throw new IllegalArgumentException("Stock quantity cannot be negative");
+            }
+
+            Set<Long> ids = new LinkedHashSet<>();
+            for (String category : categories) {
+                if (category.isBlank()) {
+                    continue;
+                }
+                Long id = categoryIds.get(category.trim().toLowerCase(Locale.ROOT));
+                if (id == null) {
+                    throw new IllegalArgumentException("Unknown category: " + category.trim());
+                }
+                ids.add(id);
+            }
+            return new ProductRow(name.trim(), description, parsedPrice, parsedStock, imageUrl, ids);
+        }
+    }
+
+    /**
+     * Split one CSV record (RFC 4180 quoting), or return null while a quoted field is still open
+     */
+    static List<String> splitCsv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,338 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over active products' name, description and category names.
+ * Query terms are matched as token prefixes: "head" finds "Headphones" without scanning the
+ * products table. Unlike the former LIKE '%term%' query, a term no longer matches inside a
+ * word, so "phones" does not find "Headphones"; that narrowing is intended.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    static final int NAME_WEIGHT = 4;
+    static final int CATEGORY_WEIGHT = 2;
+    static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ProductRepository productRepository;
+
+    // Only the "memory" search backend reads this index; other backends skip building it
+    @Value("#{'${ecommerce.search.backend:memory}' == 'memory'}")
+    private boolean enabled = true;
+
+    // term -> (product id -> best field weight the term occurs in)
+    private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    // product id -> indexed terms and categories, needed to retract a document on update
+    private final Map<Long, Document> documents = new HashMap<>();
+    // category id -> indexed products linked to it, re-indexed when the category changes
+    private final Map<Long, Set<Long>> categoryProducts = new HashMap<>();
+    // Product changes applied while a reload reads the database, replayed over what it read
+    // (null value: removed); null when no reload runs. Guarded by lock
+    private Map<Long, ProductSnapshot> changedDuringLoad;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // ==================== MAINTENANCE ====================
+
+    /**
+     * Rebuild the whole index from the database
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        reload(productRepository::findAllWithCategories, snapshots -> {
+            postings.clear();
+            documents.clear();
+            categoryProducts.clear();
+            snapshots.forEach(this::indexUnlocked);
+        });
+        logger.info("Product search index built: {} products, {} terms", documents.size(), postings.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.productId());
+        } else {
+            index(event.snapshot());
+        }
+    }
+
+    /**
+     * Category names are part of the documents of the products linked to the category, so only
+     * those are re-indexed. A bulk change naming no category rebuilds the index.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.categoryId() == null) {
+            rebuild();
+            return;
+        }
+        Set<Long> productIds;
+        lock.readLock().lock();
+        try {
+            productIds = Set.copyOf(categoryProducts.getOrDefault(event.categoryId(), Set.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (productIds.isEmpty()) {
+            return;
+        }
+        reload(() -> productRepository.findAllWithCategoriesByIdIn(productIds), snapshots -> {
+            productIds.forEach(this::removeUnlocked);
+            snapshots.forEach(this::indexUnlocked);
+        });
+    }
+
+    /**
+     * Read products from the database and apply them under the write lock. Changes applied while
+     * the rows were read are replayed afterwards, as the rows may predate them. One reload at a time.
+     */
+    private synchronized void reload(Supplier<List<Product>> query, Consumer<List<ProductSnapshot>> apply) {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<ProductSnapshot> snapshots = null;
+        try {
+            snapshots = query.get().stream().map(ProductSnapshot::from).toList();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (snapshots != null) {
+                    apply.accept(snapshots);
+                    changedDuringLoad.forEach((productId, product) -> {
+                        if (product == null) {
+                            removeUnlocked(productId);
+                        } else {
+                            indexUnlocked(product);
+                        }
+                    });
+                }
+                changedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Add or replace a product; inactive products are removed from the index
+     */
+    public void index(ProductSnapshot product) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            indexUnlocked(product);
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(product.id(), product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(productId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexUnlocked(ProductSnapshot product) {
+        removeUnlocked(product.id());
+        if (!product.active()) {
+            return;
+        }
+
+        Map<String, Integer> terms = new HashMap<>();
+        addTerms(terms, product.name(), NAME_WEIGHT);
+        addTerms(terms, product.description(), DESCRIPTION_WEIGHT);
+        product.categoryNames().forEach(name -> addTerms(terms, name, CATEGORY_WEIGHT));
+
+        terms.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(product.id(), weight));
+        documents.put(product.id(), new Document(terms.keySet(), product.categoryIds()));
+        product.categoryIds().forEach(categoryId -> categoryProducts.computeIfAbsent(categoryId, id -> new HashSet<>()).add(product.id()));
+    }
+
+    private void removeUnlocked(Long productId) {
+        Document document = documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (Long categoryId : document.categoryIds()) {
+            Set<Long> products = categoryProducts.get(categoryId);
+            products.remove(productId);
+            if (products.isEmpty()) {
+                categoryProducts.remove(categoryId);
+            }
+        }
+        for (String term : document.terms()) {
+            Map<Long, Integer> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(productId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Math::max);
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Ids of active products matching every term of the query, best match first.
+     * A blank query matches every indexed product.
+     */
+    public List<Long> search(String query) {
+        if (query == null) {
+            return List.of();
+        }
+        List<String> queryTerms = tokenize(query);
+
+        lock.readLock().lock();
+        try {
+            if (queryTerms.isEmpty()) {
+                return documents.keySet().stream().sorted().toList();
+            }
+
+            Map<Long, Integer> scores = null;
+            for (String queryTerm : queryTerms) {
+                Map<Long, Integer> termScores = matchPrefix(queryTerm);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+                        entry.setValue(entry.getValue() + termScores.get(entry.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            return rank(scores);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Best weight per product over every indexed term starting with the query term.
+     * Whole-word matches score double so "tea" ranks "Tea" above "Teapot".
+     */
+    private Map<Long, Integer> matchPrefix(String queryTerm) {
+        Map<Long, Integer> result = new HashMap<>();
+        for (Map.Entry<String, Map<Long, Integer>> entry : postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false).entrySet()) {
+            int multiplier = entry.getKey().equals(queryTerm) ? 2 : 1;
+            for (Map.Entry<Long, Integer> doc : entry.getValue().entrySet()) {
+                result.merge(doc.getKey(), doc.getValue() * multiplier, Math::max);
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> rank(Map<Long, Integer> scores) {
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<Long, Integer>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        return entries.stream().map(Map.Entry::getKey).toList();
+    }
+
+    // ==================== TOKENIZATION ====================
+
+    /**
+     * Lower-case, accent-folded, distinct tokens in order of appearance
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        Collection<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return List.copyOf(tokens);
+    }
+
+    private record Document(Set<String> terms, Set<Long> categoryIds) {
+    }
+}
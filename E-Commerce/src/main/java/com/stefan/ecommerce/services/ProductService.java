@@ -1,33 +1,103 @@
 package com.stefan.ecommerce.services;
 
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.CatalogPage;
+import com.stefan.ecommerce.dto.ContentVersion;
+import com.stefan.ecommerce.dto.CursorPage;
+import com.stefan.ecommerce.dto.FacetCounts;
+import com.stefan.ecommerce.dto.PageCursor;
+import com.stefan.ecommerce.dto.ProductCardView;
+import com.stefan.ecommerce.dto.ProductDetailView;
+import com.stefan.ecommerce.dto.ProductQuery;
+import com.stefan.ecommerce.dto.ProductSnapshot;
 import com.stefan.ecommerce.entities.Product;
 import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
 import com.stefan.ecommerce.repositories.ProductRepository;
 import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.repositories.ProductSpecifications;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @Service
 @Transactional
 public class ProductService {
 
+    private static final String DECREASE_STOCK = "UPDATE products SET stock_quantity = stock_quantity - ?, updated_at = ? " +
+            "WHERE id = ? AND stock_quantity >= ?";
+
     @Autowired
     private ProductRepository productRepository;
 
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductTrigramIndex productTrigramIndex;
+
+    @Autowired
+    private ProductFacetIndex productFacetIndex;
+
+    @Autowired
+    private ProductTopLists productTopLists;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @Autowired
+    private HotStock hotStock;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    public static final String PRODUCT_DETAILS_CACHE = "productDetails";
+
+    // Catalog sort options with a matching (active, key, id) index, see Product
+    private static final Set<String> KEYSET_SORT_PROPERTIES = Set.of("name", "price", "createdAt");
+    private static final String RANK_CURSOR = "rank";
+
+    // "memory" (ProductSearchIndex, portable) or "postgres" (tsvector full-text search)
+    @Value("${ecommerce.search.backend:memory}")
+    private String searchBackend = "memory";
+
     // ==================== PRODUCT CREATION & MANAGEMENT ====================
 
     /**
@@ -55,7 +125,9 @@ public class ProductService {
             product.setCategories(categories);
         }
 
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        categoryProductCounts.update(Set.of(), saved);
+        return publishChange(saved);
     }
 
     /**
@@ -69,6 +141,7 @@ public class ProductService {
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
         validateProductData(name, price, stockQuantity);
+        Set<Long> counted = categoryProductCounts.countedIn(product);
 
         product.setName(name);
         product.setDescription(description);
@@ -83,7 +156,8 @@ public class ProductService {
             product.setCategories(categories);
         }
 
-        return productRepository.save(product);
+        categoryProductCounts.update(counted, product);
+        return publishChange(productRepository.save(product));
     }
 
     /**
@@ -101,6 +175,14 @@ public class ProductService {
         }
     }
 
+    /**
+     * Notify in-memory catalog views of a product write; listeners run after commit
+     */
+    private Product publishChange(Product product) {
+        eventPublisher.publishEvent(ProductChangedEvent.of(ProductSnapshot.from(product)));
+        return product;
+    }
+
     // ==================== PRODUCT RETRIEVAL ====================
 
     /**
@@ -119,6 +201,24 @@ public class ProductService {
         return productRepository.findByIdWithCategories(id);
     }
 
+    /**
+     * Product details page snapshot, read through the productDetails cache.
+     * Entries are evicted by ProductDetailCacheInvalidator after every committed write.
+     */
+    @Cacheable(cacheNames = PRODUCT_DETAILS_CACHE, unless = "#result == null")
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<ProductDetailView> getProductDetail(Long id) {
+        return productRepository.findByIdWithCategories(id).map(ProductDetailView::from);
+    }
+
+    /**
+     * Version of a product's details page, answered without loading the product
+     */
+    @Transactional(readOnly = true)
+    public Optional<ContentVersion> getProductDetailVersion(Long id) {
+        return productRepository.findDetailVersionById(id);
+    }
+
     /**
      * Get all active products
      */
@@ -132,7 +232,44 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public Page<Product> findAllActiveProducts(Pageable pageable) {
-        return productRepository.findByActiveTrue(pageable);
+        return withCountedTotal(productRepository.findSliceByActiveTrue(pageable), productFacetIndex.size());
+    }
+
+    /**
+     * Catalog page narrowed by facets, with the count of every facet value.
+     * Filtering, counting and sorting run against ProductFacetIndex; only the page's cards are loaded.
+     */
+    @Transactional(readOnly = true)
+    public CatalogPage findCatalogPage(CatalogFilter filter, Pageable pageable) {
+        if (filter.isEmpty()) {
+            Page<ProductCardView> cards = withCountedTotal(productRepository.findCardSliceByActiveTrue(pageable), productFacetIndex.size());
+            return new CatalogPage(cards, productFacetIndex.counts(filter));
+        }
+
+        ProductFacetIndex.Result result = productFacetIndex.search(filter, pageable.getSort());
+        return new CatalogPage(pageOf(result.productIds(), pageable, productRepository::findCardsByIdIn, ProductCardView::id),
+                result.counts());
+    }
+
+    /**
+     * Catalog page for any combination of search term, categories, price and stock. The whole
+     * query is one criteria statement (and its count) built by ProductSpecifications, selecting
+     * card columns only; the sort gets id as its tie-breaker so pages never overlap.
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductCardView> findProducts(ProductQuery query, Pageable pageable) {
+        Sort sort = pageable.getSort().and(Sort.by("id"));
+        Pageable ordered = pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort) : Pageable.unpaged(sort);
+        return productRepository.findBy(ProductSpecifications.matching(query),
+                products -> products.as(ProductCardView.class).page(ordered));
+    }
+
+    /**
+     * Facet counts for a filter, answered from memory without a transaction
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FacetCounts getCatalogFacets(CatalogFilter filter) {
+        return productFacetIndex.counts(filter);
     }
 
     /**
@@ -152,12 +289,11 @@ public class ProductService {
     }
 
     /**
-     * Get featured products (recently added)
+     * Get featured products (recently added), served from the in-memory top lists
      */
-    @Transactional(readOnly = true)
-    public List<Product> getFeaturedProducts(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findFeaturedProducts(pageable);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ProductSnapshot> getFeaturedProducts(int limit) {
+        return productTopLists.top(ProductTopLists.Ranking.NEWEST, limit);
     }
 
     // ==================== PRODUCT SEARCH & FILTERING ====================
@@ -167,7 +303,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> searchByName(String name) {
-        return productRepository.findByNameContainingIgnoreCaseAndActiveTrue(name);
+        return productRepository.findAll(ProductSpecifications.activeWithNameContaining(name));
     }
 
     /**
@@ -175,15 +311,241 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> searchProducts(String searchTerm) {
-        return productRepository.searchProducts(searchTerm);
+        if (isFullTextBackend() && searchTerm != null) {
+            String tsQuery = toPrefixTsQuery(searchTerm);
+            return tsQuery.isEmpty() ? productRepository.findByActiveTrue() : productRepository.fullTextSearch(tsQuery);
+        }
+
+        List<Long> ids = productSearchIndex.search(searchTerm);
+        return inRankOrder(ids, productRepository.findAllById(ids), Product::getId);
     }
 
     /**
-     * Search products with pagination
+     * Search products with pagination; only the requested page is loaded from the database
      */
     @Transactional(readOnly = true)
     public Page<Product> searchProducts(String searchTerm, Pageable pageable) {
-        return productRepository.searchProducts(searchTerm, pageable);
+        return searchProducts(searchTerm, pageable, false);
+    }
+
+    /**
+     * Search products with pagination; fuzzy search tolerates typos in product names
+     * and ranks results by trigram similarity
+     */
+    @Transactional(readOnly = true)
+    public Page<Product> searchProducts(String searchTerm, Pageable pageable, boolean fuzzy) {
+        if (fuzzy && searchTerm != null && !ProductSearchIndex.tokenize(searchTerm).isEmpty()) {
+            if (isFullTextBackend()) {
+                return productRepository.fuzzySearch(String.join(" ", ProductSearchIndex.tokenize(searchTerm)), pageable);
+            }
+            return pageOf(productTrigramIndex.search(searchTerm), pageable);
+        }
+
+        if (isFullTextBackend() && searchTerm != null) {
+            String tsQuery = toPrefixTsQuery(searchTerm);
+            return tsQuery.isEmpty() ? productRepository.findByActiveTrue(pageable) : productRepository.fullTextSearch(tsQuery, pageable);
+        }
+
+        return pageOf(productSearchIndex.search(searchTerm), pageable);
+    }
+
+    /**
+     * Hydrate one page of ranked ids
+     */
+    private Page<Product> pageOf(List<Long> ids, Pageable pageable) {
+        return pageOf(ids, pageable, productRepository::findAllById, Product::getId);
+    }
+
+    private static <T> Page<T> pageOf(List<Long> ids, Pageable pageable,
+                                      Function<List<Long>, List<T>> loader, Function<T, Long> idOf) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(inRankOrder(ids, loader.apply(ids), idOf));
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), ids.size());
+        int to = Math.min(from + pageable.getPageSize(), ids.size());
+        List<Long> pageIds = ids.subList(from, to);
+        return new PageImpl<>(inRankOrder(pageIds, loader.apply(pageIds), idOf), pageable, ids.size());
+    }
+
+    private boolean isFullTextBackend() {
+        return "postgres".equalsIgnoreCase(searchBackend);
+    }
+
+    /**
+     * Turn user input into a tsquery with the same semantics as the in-memory index:
+     * every term must match, each as a word prefix. Tokens are letters and digits only,
+     * so they cannot inject tsquery operators.
+     */
+    static String toPrefixTsQuery(String searchTerm) {
+        return String.join(" & ", ProductSearchIndex.tokenize(searchTerm).stream()
+                .map(token -> token + ":*")
+                .toList());
+    }
+
+    /**
+     * Order hydrated products the way the search index ranked their ids
+     */
+    private static <T> List<T> inRankOrder(List<Long> ids, List<T> products, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        products.forEach(product -> byId.put(idOf.apply(product), product));
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T product = byId.get(id);
+            if (product != null) {
+                ordered.add(product);
+            }
+        }
+        return ordered;
+    }
+
+    // ==================== KEYSET PAGINATION ====================
+
+    /**
+     * Keyset page of active product cards: cost depends on the page size only, not on its depth
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductCardView> findActiveProducts(String cursor, int size, String sortBy, Sort.Direction direction) {
+        return scroll(cursor, sortBy, direction,
+                (position, sort) -> productRepository.findCardsByActiveTrue(position, sort, Limit.of(size)),
+                ProductCardView::id, ProductService::sortKey);
+    }
+
+    /**
+     * Keyset page of a category's active product cards
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductCardView> findActiveProductsByCategory(Long categoryId, String cursor, int size,
+                                                                    String sortBy, Sort.Direction direction) {
+        return scroll(cursor, sortBy, direction,
+                (position, sort) -> productRepository.findCardsByCategoriesIdAndActiveTrue(categoryId, position, sort, Limit.of(size)),
+                ProductCardView::id, ProductService::sortKey);
+    }
+
+    /**
+     * Keyset page of search results in relevance order; the cursor resumes after the last product shown,
+     * so products added meanwhile neither repeat nor shift the following pages
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Product> searchProducts(String searchTerm, String cursor, int size, boolean fuzzy) {
+        List<String> tokens = ProductSearchIndex.tokenize(searchTerm);
+        if (tokens.isEmpty()) {
+            return scroll(cursor, "name", Sort.Direction.ASC,
+                    (position, sort) -> productRepository.findByActiveTrue(position, sort, Limit.of(size)),
+                    Product::getId, ProductService::sortKey);
+        }
+
+        PageCursor after = PageCursor.decode(cursor);
+        if (after != null && (!after.matches(RANK_CURSOR, Sort.Direction.DESC) || !isNumber(after.key()))) {
+            after = null;
+        }
+
+        if (isFullTextBackend()) {
+            return fuzzy ? fuzzySearchPage(String.join(" ", tokens), after, size) : fullTextSearchPage(toPrefixTsQuery(searchTerm), after, size);
+        }
+
+        List<Long> ids = fuzzy ? productTrigramIndex.search(searchTerm) : productSearchIndex.search(searchTerm);
+        int from = 0;
+        if (after != null) {
+            int last = ids.indexOf(after.id());
+            from = last >= 0 ? last + 1 : Math.min((int) Float.parseFloat(after.key()), ids.size());
+        }
+        int to = Math.min(from + size, ids.size());
+        List<Product> content = inRankOrder(ids.subList(from, to), productRepository.findAllById(ids.subList(from, to)), Product::getId);
+        String next = to < ids.size() && !content.isEmpty()
+                ? new PageCursor(RANK_CURSOR, Sort.Direction.DESC, content.get(content.size() - 1).getId(), String.valueOf(to)).encode()
+                : null;
+        return new CursorPage<>(content, next);
+    }
+
+    private CursorPage<Product> fullTextSearchPage(String tsQuery, PageCursor after, int size) {
+        float rank = after != null ? Float.parseFloat(after.key()) : Float.POSITIVE_INFINITY;
+        List<Product> rows = productRepository.fullTextSearchAfter(tsQuery, rank, after != null ? after.id() : 0L, size + 1);
+        return rankedPage(rows, size, last -> productRepository.fullTextRank(tsQuery, last.getId()));
+    }
+
+    private CursorPage<Product> fuzzySearchPage(String searchTerm, PageCursor after, int size) {
+        float similarity = after != null ? Float.parseFloat(after.key()) : Float.POSITIVE_INFINITY;
+        List<Product> rows = productRepository.fuzzySearchAfter(searchTerm, similarity, after != null ? after.id() : 0L, size + 1);
+        return rankedPage(rows, size, last -> productRepository.fuzzySimilarity(searchTerm, last.getId()));
+    }
+
+    /**
+     * Trim the look-ahead row and point the cursor at the (score, id) of the last row kept
+     */
+    private static CursorPage<Product> rankedPage(List<Product> rows, int size, Function<Product, Float> score) {
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null);
+        }
+        List<Product> content = rows.subList(0, size);
+        Product last = content.get(size - 1);
+        return new CursorPage<>(content, new PageCursor(RANK_CURSOR, Sort.Direction.DESC, last.getId(),
+                String.valueOf(score.apply(last))).encode());
+    }
+
+    /**
+     * Run a keyset query sorted by one of the catalog sort options with id as tie-breaker,
+     * resuming from the cursor when it was produced under the same sort
+     */
+    private static <T> CursorPage<T> scroll(String cursor, String sortBy, Sort.Direction direction,
+                                            BiFunction<ScrollPosition, Sort, Window<T>> query,
+                                            Function<T, Long> idOf, BiFunction<String, T, String> sortKey) {
+        String property = KEYSET_SORT_PROPERTIES.contains(sortBy) ? sortBy : "name";
+        Sort sort = Sort.by(direction, property).and(Sort.by(direction, "id"));
+
+        PageCursor after = PageCursor.decode(cursor);
+        Object key = after != null && after.matches(property, direction) ? parseSortKey(property, after.key()) : null;
+        ScrollPosition position = key != null
+                ? ScrollPosition.forward(Map.of(property, key, "id", after.id()))
+                : ScrollPosition.keyset();
+
+        Window<T> window = query.apply(position, sort);
+        if (!window.hasNext() || window.isEmpty()) {
+            return new CursorPage<>(window.getContent(), null);
+        }
+        T last = window.getContent().get(window.size() - 1);
+        return new CursorPage<>(window.getContent(),
+                new PageCursor(property, direction, idOf.apply(last), sortKey.apply(property, last)).encode());
+    }
+
+    private static String sortKey(String property, ProductCardView product) {
+        return switch (property) {
+            case "price" -> product.price().toPlainString();
+            case "createdAt" -> product.createdAt().toString();
+            default -> product.name();
+        };
+    }
+
+    private static String sortKey(String property, Product product) {
+        return switch (property) {
+            case "price" -> product.getPrice().toPlainString();
+            case "createdAt" -> product.getCreatedAt().toString();
+            default -> product.getName();
+        };
+    }
+
+    private static boolean isNumber(String key) {
+        try {
+            Float.parseFloat(key);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sort key from a client-supplied cursor; null when it does not parse, which restarts from the first page
+     */
+    private static Object parseSortKey(String property, String key) {
+        try {
+            return switch (property) {
+                case "price" -> new BigDecimal(key);
+                case "createdAt" -> LocalDateTime.parse(key);
+                default -> key;
+            };
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return null;
+        }
     }
 
     /**
@@ -199,7 +561,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> findByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
-        return productRepository.findByPriceBetweenAndActiveTrue(minPrice, maxPrice);
+        return productRepository.findAll(ProductSpecifications.matching(ProductQuery.priceBetween(minPrice, maxPrice)));
     }
 
     /**
@@ -207,7 +569,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public Page<Product> findByPriceRange(BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable) {
-        return productRepository.findByPriceBetweenAndActiveTrue(minPrice, maxPrice, pageable);
+        return productRepository.findAll(ProductSpecifications.matching(ProductQuery.priceBetween(minPrice, maxPrice)), pageable);
     }
 
     /**
@@ -215,7 +577,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> findByCategory(Category category) {
-        return productRepository.findByCategoryAndActiveTrue(category);
+        return findByCategoryId(category.getId());
     }
 
     /**
@@ -223,7 +585,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public Page<Product> findByCategory(Category category, Pageable pageable) {
-        return productRepository.findByCategoryAndActiveTrue(category, pageable);
+        return productRepository.findAll(ProductSpecifications.matching(ProductQuery.inCategory(category.getId())), pageable);
     }
 
     /**
@@ -231,29 +593,59 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> findByCategoryId(Long categoryId) {
-        return productRepository.findByCategoryIdAndActiveTrue(categoryId);
+        return productRepository.findAll(ProductSpecifications.matching(ProductQuery.inCategory(categoryId)));
     }
 
     /**
      * Find products by category ID with pagination
      */
     @Transactional(readOnly = true)
-    public Page<Product> findByCategoryId(Long categoryId, Pageable pageable) {
-        // This method assumes the repository has this method, or we can implement it differently
-        Optional<Category> category = categoryRepository.findById(categoryId);
-        if (category.isPresent()) {
-            return productRepository.findByCategoryAndActiveTrue(category.get(), pageable);
-        } else {
-            // Return empty page if category not found
-            return Page.empty(pageable);
+    public Page<ProductCardView> findByCategoryId(Long categoryId, Pageable pageable) {
+        // Unknown categories have no products, so both the slice and the total come back empty
+        return withCountedTotal(productRepository.findCardSliceByCategoriesIdAndActiveTrue(categoryId, pageable),
+                productFacetIndex.categorySize(categoryId));
+    }
+
+    /**
+     * Page of the active product cards in a category and all of its subcategories; a product
+     * linked to several of them is listed once
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductCardView> findByCategorySubtree(Long categoryId, Pageable pageable) {
+        Sort sort = pageable.getSort().and(Sort.by("id"));
+        Pageable ordered = pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort) : Pageable.unpaged(sort);
+        return productRepository.findCardPageInCategorySubtree(categoryId, ordered);
+    }
+
+    /**
+     * Keyset page of the active product cards in a category and all of its subcategories
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductCardView> findActiveProductsInCategorySubtree(Long categoryId, String cursor, int size,
+                                                                           String sortBy, Sort.Direction direction) {
+        return scroll(cursor, sortBy, direction,
+                (position, sort) -> productRepository.findBy(ProductSpecifications.activeInCategorySubtree(categoryId),
+                        products -> products.as(ProductCardView.class).sortBy(sort).limit(size).scroll(position)),
+                ProductCardView::id, ProductService::sortKey);
+    }
+
+    /**
+     * Page whose total comes from the in-memory counters rather than a COUNT query.
+     * The counters trail commits slightly, so the total is reconciled with what the slice saw.
+     */
+    private static <T> Page<T> withCountedTotal(Slice<T> slice, long total) {
+        long seen = slice.getPageable().isPaged() ? slice.getPageable().getOffset() + slice.getNumberOfElements() : slice.getNumberOfElements();
+        if (slice.hasNext()) {
+            seen++;
         }
+        return new PageImpl<>(slice.getContent(), slice.getPageable(), Math.max(total, seen));
     }
 
     /**
      * Find products by category (alternative method for backward compatibility)
      */
     @Transactional(readOnly = true)
-    public Page<Product> findByCategory(Long categoryId, Pageable pageable) {
+    public Page<ProductCardView> findByCategory(Long categoryId, Pageable pageable) {
         return findByCategoryId(categoryId, pageable);
     }
 
@@ -263,48 +655,128 @@ public class ProductService {
      * Update product stock
      */
     public Product updateStock(Long productId, Integer newStock) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
-
         if (newStock < 0) {
             throw new IllegalArgumentException("Stock quantity cannot be negative");
         }
 
+        // A hot product's sales are written back first; its orders are turned away until this
+        // transaction ends and the counters then start over from the stored stock
+        hotStock.suspend(productId);
+
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+
         product.setStockQuantity(newStock);
         product.setUpdatedAt(LocalDateTime.now());
 
-        return productRepository.save(product);
+        return publishChange(productRepository.save(product));
     }
 
     /**
-     * Decrease stock (for order processing)
+     * Decrease stock (for order processing). One conditional UPDATE, so concurrent orders for the
+     * same product never read the same stock level and oversell it. Hot products are served from
+     * HotStock; the product returned for them shows the stock as last written back.
      */
     public Product decreaseStock(Long productId, Integer quantity) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+        validateQuantity(quantity);
 
-        if (product.getStockQuantity() < quantity) {
+        HotStock.Take take = hotStock.take(productId, quantity);
+        if (take == HotStock.Take.TAKEN) {
+            return findStockChanged(productId);
+        }
+        if (take == HotStock.Take.INSUFFICIENT) {
             throw new IllegalArgumentException("Insufficient stock. Available: " +
-                    product.getStockQuantity() + ", Requested: " + quantity);
+                    hotStock.available(productId).orElse(0) + ", Requested: " + quantity);
         }
 
-        product.setStockQuantity(product.getStockQuantity() - quantity);
-        product.setUpdatedAt(LocalDateTime.now());
+        if (productRepository.decreaseStock(productId, quantity, LocalDateTime.now()) == 0) {
+            Integer available = productRepository.findStockQuantityById(productId)
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+            throw new IllegalArgumentException("Insufficient stock. Available: " +
+                    available + ", Requested: " + quantity);
+        }
+
+        return publishChange(findStockChanged(productId));
+    }
+
+    /**
+     * Decrease the stock of several loaded products for one order. Hot products are served from
+     * HotStock and the rest with one JDBC batch of conditional UPDATEs, run in product id order so
+     * concurrent orders lock the rows in the same order. A line short of stock fails the whole call.
+     * The entities passed in keep their old stock; the new levels go out with the change events.
+     */
+    public void decreaseStock(Collection<Product> products, Map<Long, Integer> quantities) {
+        quantities.values().forEach(this::validateQuantity);
+        List<Product> sorted = products.stream()
+                .sorted(Comparator.comparing(Product::getId))
+                .toList();
+
+        List<Product> stored = new ArrayList<>();
+        for (Product product : sorted) {
+            int quantity = quantities.get(product.getId());
+            HotStock.Take take = hotStock.take(product.getId(), quantity);
+            if (take == HotStock.Take.INSUFFICIENT) {
+                throw new IllegalArgumentException("Insufficient stock for " + product.getName() + ". Available: " +
+                        hotStock.available(product.getId()).orElse(0) + ", Requested: " + quantity);
+            }
+            if (take == HotStock.Take.NOT_HOT) {
+                stored.add(product);
+            }
+        }
+        if (stored.isEmpty()) {
+            return;
+        }
 
-        return productRepository.save(product);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[] updated = jdbcTemplate.batchUpdate(DECREASE_STOCK, stored, stored.size(), (statement, product) -> {
+            int quantity = quantities.get(product.getId());
+            statement.setInt(1, quantity);
+            statement.setTimestamp(2, now);
+            statement.setLong(3, product.getId());
+            statement.setInt(4, quantity);
+        })[0];
+
+        Map<Long, Integer> stock = new HashMap<>();
+        productRepository.findStockQuantitiesByIdIn(stored.stream().map(Product::getId).toList())
+                .forEach(row -> stock.put((Long) row[0], (Integer) row[1]));
+        for (int i = 0; i < stored.size(); i++) {
+            Product product = stored.get(i);
+            if (updated[i] == 0) {
+                throw new IllegalArgumentException("Insufficient stock for " + product.getName() + ". Available: " +
+                        stock.get(product.getId()) + ", Requested: " + quantities.get(product.getId()));
+            }
+        }
+        stored.forEach(product -> eventPublisher.publishEvent(ProductChangedEvent.of(
+                ProductSnapshot.from(product).withStockQuantity(stock.get(product.getId())))));
     }
 
     /**
      * Increase stock (for returns/restocking)
      */
     public Product increaseStock(Long productId, Integer quantity) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+        validateQuantity(quantity);
 
-        product.setStockQuantity(product.getStockQuantity() + quantity);
-        product.setUpdatedAt(LocalDateTime.now());
+        if (hotStock.put(productId, quantity)) {
+            return findStockChanged(productId);
+        }
 
-        return productRepository.save(product);
+        if (productRepository.increaseStock(productId, quantity, LocalDateTime.now()) == 0) {
+            throw new IllegalArgumentException("Product not found: " + productId);
+        }
+
+        return publishChange(findStockChanged(productId));
+    }
+
+    private void validateQuantity(Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+    }
+
+    // Stock UPDATEs clear the persistence context, so this reads the row as last written
+    private Product findStockChanged(Long productId) {
+        return productRepository.findById(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
     }
 
     /**
@@ -312,6 +784,11 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public boolean isInStock(Long productId, Integer quantity) {
+        OptionalInt hot = hotStock.available(productId);
+        if (hot.isPresent()) {
+            return hot.getAsInt() >= quantity;
+        }
+
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
@@ -323,7 +800,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> getLowStockProducts(Integer threshold) {
-        return productRepository.findByStockQuantityLessThanAndActiveTrue(threshold);
+        return productRepository.findAll(ProductSpecifications.activeWithStockBelow(threshold));
     }
 
     /**
@@ -331,7 +808,7 @@ public class ProductService {
      */
     @Transactional(readOnly = true)
     public List<Product> getOutOfStockProducts() {
-        return productRepository.findByStockQuantityAndActiveTrue(0);
+        return productRepository.findAll(ProductSpecifications.activeWithStockBelow(1));
     }
 
     // ==================== PRODUCT STATUS MANAGEMENT ====================
@@ -343,9 +820,11 @@ public class ProductService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         product.setActive(true);
         product.setUpdatedAt(LocalDateTime.now());
-        productRepository.save(product);
+        categoryProductCounts.update(counted, product);
+        publishChange(productRepository.save(product));
     }
 
     /**
@@ -355,9 +834,42 @@ public class ProductService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         product.setActive(false);
         product.setUpdatedAt(LocalDateTime.now());
-        productRepository.save(product);
+        categoryProductCounts.update(counted, product);
+        publishChange(productRepository.save(product));
+    }
+
+    /**
+     * Activate many products with one UPDATE per batch of ids; returns how many changed
+     */
+    public int activateProducts(Collection<Long> productIds) {
+        return setProductsActive(productIds, true);
+    }
+
+    /**
+     * Deactivate many products with one UPDATE per batch of ids; returns how many changed
+     */
+    public int deactivateProducts(Collection<Long> productIds) {
+        return setProductsActive(productIds, false);
+    }
+
+    /**
+     * Category counts move first, while the rows still tell which products flip. In-memory
+     * views reload once after commit instead of once per product.
+     */
+    private int setProductsActive(Collection<Long> productIds, boolean active) {
+        LocalDateTime now = LocalDateTime.now();
+        int changed = 0;
+        for (List<Long> batch : IdBatches.of(productIds)) {
+            categoryProductCounts.statusChanging(batch, active);
+            changed += productRepository.updateActiveByIdIn(batch, active, now);
+        }
+        if (changed > 0) {
+            eventPublisher.publishEvent(new CatalogReloadedEvent(changed));
+        }
+        return changed;
     }
 
     // ==================== CATEGORY MANAGEMENT ====================
@@ -372,10 +884,12 @@ public class ProductService {
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found: " + categoryId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         product.getCategories().add(category);
         product.setUpdatedAt(LocalDateTime.now());
+        categoryProductCounts.update(counted, product);
 
-        return productRepository.save(product);
+        return publishChange(productRepository.save(product));
     }
 
     /**
@@ -395,10 +909,12 @@ public class ProductService {
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found: " + categoryId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
         product.getCategories().remove(category);
         product.setUpdatedAt(LocalDateTime.now());
+        categoryProductCounts.update(counted, product);
 
-        return productRepository.save(product);
+        return publishChange(productRepository.save(product));
     }
 
     /**
@@ -408,6 +924,8 @@ public class ProductService {
         Product product = productRepository.findByIdWithCategories(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
 
+        Set<Long> counted = categoryProductCounts.countedIn(product);
+
         // Clear existing categories
         product.getCategories().clear();
 
@@ -421,27 +939,26 @@ public class ProductService {
         }
 
         product.setUpdatedAt(LocalDateTime.now());
-        return productRepository.save(product);
+        categoryProductCounts.update(counted, product);
+        return publishChange(productRepository.save(product));
     }
 
     // ==================== SORTING & PAGINATION ====================
 
     /**
-     * Get products sorted by price (ascending)
+     * Get products sorted by price (ascending), served from the in-memory top lists
      */
-    @Transactional(readOnly = true)
-    public List<Product> getProductsSortedByPriceAsc(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findCheapestProducts(pageable);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ProductSnapshot> getProductsSortedByPriceAsc(int limit) {
+        return productTopLists.top(ProductTopLists.Ranking.CHEAPEST, limit);
     }
 
     /**
-     * Get products sorted by price (descending)
+     * Get products sorted by price (descending), served from the in-memory top lists
      */
-    @Transactional(readOnly = true)
-    public List<Product> getProductsSortedByPriceDesc(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findMostExpensiveProducts(pageable);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ProductSnapshot> getProductsSortedByPriceDesc(int limit) {
+        return productTopLists.top(ProductTopLists.Ranking.MOST_EXPENSIVE, limit);
     }
 
     /**
@@ -465,19 +982,27 @@ public class ProductService {
     }
 
     /**
-     * Get active product count
+     * Get active product count from the in-memory counters
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public long getActiveProductCount() {
-        return productRepository.countByActiveTrue();
+        return productFacetIndex.size();
     }
 
     /**
-     * Get product count by category
+     * Get active product count by category from the in-memory counters
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public long getProductCountByCategory(Long categoryId) {
-        return productRepository.countByCategoryIdAndActiveTrue(categoryId);
+        return productFacetIndex.categorySize(categoryId);
+    }
+
+    /**
+     * Get active product count of a category and all of its subcategories
+     */
+    @Transactional(readOnly = true)
+    public long getProductCountByCategorySubtree(Long categoryId) {
+        return productRepository.countActiveInCategorySubtree(categoryId);
     }
 
     // ==================== DELETE PRODUCT ====================
@@ -493,9 +1018,10 @@ public class ProductService {
      * Permanently delete product (use with caution)
      */
     public void permanentlyDeleteProduct(Long productId) {
-        if (!productRepository.existsById(productId)) {
-            throw new IllegalArgumentException("Product not found: " + productId);
-        }
-        productRepository.deleteById(productId);
+        Product product = productRepository.findByIdWithCategories(productId)
+                .orElseThrow(() -> new IllegalArgumentException("Product not found: " + productId));
+        categoryProductCounts.update(categoryProductCounts.countedIn(product), Set.of());
+        productRepository.delete(product);
+        eventPublisher.publishEvent(ProductChangedEvent.removed(productId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,300 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.Suggestion;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Search-as-you-type completions over active product and category names.
+ * Completions are served from an immutable radix trie whose nodes carry their
+ * precomputed best completions, so a lookup is one walk down the query's characters.
+ * Catalog changes only update the names; a scheduled task builds a new trie from them
+ * off the writing thread, at most once per rebuild interval however many writes arrived,
+ * and swaps it in atomically. Readers never lock.
+ */
+@Component
+public class ProductSuggestIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestIndex.class);
+
+    // Completions kept per trie node, and therefore the largest limit a lookup can return
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+
+    // Source of truth for the next trie; only touched while holding the monitor
+    private final Map<Long, String> productNames = new HashMap<>();
+    private final Map<Long, String> categoryNames = new HashMap<>();
+
+    // Set when the names changed after the current trie was built
+    private final AtomicBoolean stale = new AtomicBoolean();
+    // Held while building, so an older build never replaces a newer trie
+    private final Object building = new Object();
+    private final AtomicReference<Node> root = new AtomicReference<>(Node.EMPTY);
+
+    public ProductSuggestIndex(ProductRepository productRepository, CategoryRepository categoryRepository) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+    }
+
+    // ==================== MAINTENANCE ====================
+
+    /**
+     * Reload every active product and category name from the database and build the trie right away
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        reload();
+        publishIfStale();
+        logger.info("Product suggest index built: {} products, {} categories", productNames.size(), categoryNames.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        reload();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (event.isRemoved() || !event.snapshot().active()) {
+            if (productNames.remove(event.productId()) == null) {
+                return;
+            }
+        } else if (event.snapshot().name().equals(productNames.put(event.productId(), event.snapshot().name()))) {
+            return;
+        }
+        stale.set(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onCategoryChanged(CategoryChangedEvent event) {
+        loadCategories();
+        stale.set(true);
+    }
+
+    private synchronized void reload() {
+        productNames.clear();
+        for (Product product : productRepository.findByActiveTrue()) {
+            productNames.put(product.getId(), product.getName());
+        }
+        loadCategories();
+        stale.set(true);
+    }
+
+    private void loadCategories() {
+        categoryNames.clear();
+        for (Category category : categoryRepository.findByActiveTrue()) {
+            categoryNames.put(category.getId(), category.getName());
+        }
+    }
+
+    /**
+     * Build a trie from the current names if they changed since the last build. Writes arriving
+     * during a build mark the names stale again and are picked up by the next run.
+     */
+    @Scheduled(fixedDelayString = "${ecommerce.suggest.rebuild-interval:PT0.5S}",
+            initialDelayString = "${ecommerce.suggest.rebuild-interval:PT0.5S}")
+    public void publishIfStale() {
+        synchronized (building) {
+            if (!stale.getAndSet(false)) {
+                return;
+            }
+            long started = System.nanoTime();
+            List<Suggestion> suggestions;
+            synchronized (this) {
+                suggestions = new ArrayList<>(productNames.size() + categoryNames.size());
+                productNames.forEach((id, name) -> suggestions.add(Suggestion.product(id, name)));
+                categoryNames.forEach((id, name) -> suggestions.add(Suggestion.category(id, name)));
+            }
+            root.set(build(suggestions));
+            logger.debug("Product suggest index built: {} names in {} ms", suggestions.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Best completions for a partially typed query, matched against the start of any word.
+     * Names starting with the query come first, then shorter names.
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String key = String.join(" ", ProductSearchIndex.tokenize(query));
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        // A query ending inside an edge is answered by the node below it, whose keys all extend the query
+        Node node = root.get();
+        for (int i = 0; i < key.length(); ) {
+            int index = node.child(key.charAt(i));
+            if (index < 0) {
+                return List.of();
+            }
+            String label = node.labels[index];
+            int length = Math.min(label.length(), key.length() - i);
+            if (!key.regionMatches(i, label, 0, length)) {
+                return List.of();
+            }
+            node = node.children[index];
+            i += length;
+        }
+
+        int size = Math.min(limit, node.top.length);
+        List<Suggestion> suggestions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            suggestions.add(node.top[i].suggestion);
+        }
+        return suggestions;
+    }
+
+    // ==================== TRIE ====================
+
+    /**
+     * A completion as reached through one of its keys; keys starting later in the name rank lower
+     */
+    private record Candidate(Suggestion suggestion, int wordIndex) {
+
+        static final Comparator<Candidate> RANKING = Comparator.comparingInt(Candidate::wordIndex)
+                .thenComparingInt(candidate -> candidate.suggestion.text().length())
+                .thenComparing(candidate -> candidate.suggestion.text(), String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(candidate -> candidate.suggestion.type())
+                .thenComparing(candidate -> candidate.suggestion.id());
+    }
+
+    /**
+     * One key of a completion: a word start of its name through to the end of the name
+     */
+    private record Key(String text, Candidate candidate) {
+    }
+
+    /**
+     * Immutable radix trie node. Chains of single-child nodes are merged into one edge, so there are
+     * at most two nodes per key however long the names are; children are found by binary search
+     * over the first characters of their edge labels.
+     */
+    private static final class Node {
+
+        private static final char[] NO_FIRSTS = new char[0];
+        private static final String[] NO_LABELS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        static final Node EMPTY = new Node(NO_FIRSTS, NO_LABELS, NO_CHILDREN, new Candidate[0]);
+
+        private final char[] firsts;
+        private final String[] labels;
+        private final Node[] children;
+        private final Candidate[] top;
+
+        Node(char[] firsts, String[] labels, Node[] children, Candidate[] top) {
+            this.firsts = firsts;
+            this.labels = labels;
+            this.children = children;
+            this.top = top;
+        }
+
+        int child(char first) {
+            return Arrays.binarySearch(firsts, first);
+        }
+    }
+
+    /**
+     * Build the trie from every word start of every name. The keys are sorted once and each node is
+     * built from the range of keys sharing its prefix, so no per-character nodes are ever allocated.
+     */
+    private static Node build(List<Suggestion> suggestions) {
+        List<Key> keys = new ArrayList<>();
+        for (Suggestion suggestion : suggestions) {
+            List<String> words = ProductSearchIndex.tokenize(suggestion.text());
+            for (int i = 0; i < words.size(); i++) {
+                keys.add(new Key(String.join(" ", words.subList(i, words.size())), new Candidate(suggestion, i)));
+            }
+        }
+        if (keys.isEmpty()) {
+            return Node.EMPTY;
+        }
+        keys.sort(Comparator.comparing(Key::text));
+        return build(keys, 0, keys.size(), 0);
+    }
+
+    /**
+     * Node for keys[from, to), which share their first depth characters
+     */
+    private static Node build(List<Key> keys, int from, int to, int depth) {
+        List<Candidate> candidates = new ArrayList<>();
+        // Keys ending here sort before the keys that go on
+        int i = from;
+        while (i < to && keys.get(i).text().length() == depth) {
+            candidates.add(keys.get(i++).candidate());
+        }
+
+        List<String> labels = new ArrayList<>();
+        List<Node> children = new ArrayList<>();
+        while (i < to) {
+            String first = keys.get(i).text();
+            int end = i + 1;
+            while (end < to && keys.get(end).text().charAt(depth) == first.charAt(depth)) {
+                end++;
+            }
+            // Sorted keys: what the first and last of the range share, the whole range shares
+            String last = keys.get(end - 1).text();
+            int shared = depth + 1;
+            while (shared < first.length() && shared < last.length() && first.charAt(shared) == last.charAt(shared)) {
+                shared++;
+            }
+            Node child = build(keys, i, end, shared);
+            labels.add(first.substring(depth, shared));
+            children.add(child);
+            candidates.addAll(Arrays.asList(child.top));
+            i = end;
+        }
+
+        if (children.isEmpty()) {
+            return new Node(Node.NO_FIRSTS, Node.NO_LABELS, Node.NO_CHILDREN, best(candidates));
+        }
+        char[] firsts = new char[labels.size()];
+        for (int c = 0; c < firsts.length; c++) {
+            firsts[c] = labels.get(c).charAt(0);
+        }
+        return new Node(firsts, labels.toArray(new String[0]), children.toArray(new Node[0]), best(candidates));
+    }
+
+    private static Candidate[] best(List<Candidate> candidates) {
+        candidates.sort(Candidate.RANKING);
+        List<Candidate> best = new ArrayList<>(MAX_SUGGESTIONS);
+        Set<Suggestion> seen = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (seen.add(candidate.suggestion)) {
+                best.add(candidate);
+                if (best.size() == MAX_SUGGESTIONS) {
+                    break;
+                }
+            }
+        }
+        return best.toArray(new Candidate[0]);
+    }
+}
@@ -0,0 +1,260 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The newest, cheapest and most expensive active products, kept sorted in memory.
+ * Each list holds the best CAPACITY products and is patched by product events; it only
+ * goes back to the database once removals shrink it below the largest limit it serves, and
+ * then reads just its first CAPACITY products. Readers get an immutable copy and never lock.
+ */
+@Component
+public class ProductTopLists {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductTopLists.class);
+
+    // Largest list a caller can ask for
+    public static final int MAX_LIMIT = 50;
+
+    // Headroom above MAX_LIMIT, so most removals do not force a reload
+    static final int CAPACITY = 2 * MAX_LIMIT;
+
+    public enum Ranking {
+        NEWEST(Comparator.comparing(ProductSnapshot::createdAt, Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(ProductSnapshot::id, Comparator.reverseOrder())),
+        CHEAPEST(Comparator.comparing(ProductSnapshot::price, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(ProductSnapshot::id)),
+        MOST_EXPENSIVE(Comparator.comparing(ProductSnapshot::price, Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(ProductSnapshot::id));
+
+        private final Comparator<ProductSnapshot> order;
+
+        Ranking(Comparator<ProductSnapshot> order) {
+            this.order = order;
+        }
+    }
+
+    private final ProductRepository productRepository;
+    // Read-only, so the loaded products' categories can be read into their snapshots
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Ranking, TopList> lists = new EnumMap<>(Ranking.class);
+    // Held while lists are read from the database, so one load at a time
+    private final Object loading = new Object();
+    // Product changes applied while a load reads the database, replayed over what it read
+    // (null value: removed); null when no load runs. Guarded by this
+    private Map<Long, ProductSnapshot> changedDuringLoad;
+
+    public ProductTopLists(ProductRepository productRepository, PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        for (Ranking ranking : Ranking.values()) {
+            lists.put(ranking, new TopList(ranking.order));
+        }
+    }
+
+    // ==================== MAINTENANCE ====================
+
+    /**
+     * Reload every list from the database
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        reload(EnumSet.allOf(Ranking.class));
+        logger.info("Product top lists built from the first {} products of each ranking", CAPACITY);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.productId());
+        } else {
+            index(event.snapshot());
+        }
+    }
+
+    /**
+     * Add or replace a product; inactive products leave every list
+     */
+    public void index(ProductSnapshot product) {
+        reloadShort(apply(product.id(), product));
+    }
+
+    public void remove(Long productId) {
+        reloadShort(apply(productId, null));
+    }
+
+    // Returns the lists left too short to serve MAX_LIMIT products
+    private synchronized Set<Ranking> apply(Long productId, ProductSnapshot product) {
+        applyUnlocked(productId, product);
+        if (changedDuringLoad != null) {
+            changedDuringLoad.put(productId, product);
+        }
+        lists.values().forEach(TopList::publish);
+        Set<Ranking> tooShort = EnumSet.noneOf(Ranking.class);
+        lists.forEach((ranking, list) -> {
+            if (list.isShort()) {
+                tooShort.add(ranking);
+            }
+        });
+        return tooShort;
+    }
+
+    private void applyUnlocked(Long productId, ProductSnapshot product) {
+        for (TopList list : lists.values()) {
+            list.remove(productId);
+            if (product != null && product.active()) {
+                list.offer(product);
+            }
+        }
+    }
+
+    private void reloadShort(Set<Ranking> tooShort) {
+        if (!tooShort.isEmpty()) {
+            reload(tooShort);
+        }
+    }
+
+    /**
+     * Read the first CAPACITY products of each ranking and swap them in under the lock, then
+     * replay the changes applied meanwhile, as the rows read may predate them
+     */
+    private void reload(Set<Ranking> rankings) {
+        synchronized (loading) {
+            synchronized (this) {
+                changedDuringLoad = new HashMap<>();
+            }
+            Map<Ranking, List<ProductSnapshot>> loaded = null;
+            try {
+                loaded = transactionTemplate.execute(status -> {
+                    Map<Ranking, List<ProductSnapshot>> best = new EnumMap<>(Ranking.class);
+                    rankings.forEach(ranking -> best.put(ranking, load(ranking)));
+                    return best;
+                });
+            } finally {
+                synchronized (this) {
+                    if (loaded != null) {
+                        loaded.forEach((ranking, best) -> lists.get(ranking).reset(best));
+                        changedDuringLoad.forEach(this::applyUnlocked);
+                    }
+                    changedDuringLoad = null;
+                    lists.values().forEach(TopList::publish);
+                }
+            }
+        }
+    }
+
+    private List<ProductSnapshot> load(Ranking ranking) {
+        List<Product> best = switch (ranking) {
+            case NEWEST -> productRepository.findFeaturedProducts(firstPage(Sort.Direction.DESC));
+            case CHEAPEST -> productRepository.findCheapestProducts(firstPage(Sort.Direction.ASC));
+            case MOST_EXPENSIVE -> productRepository.findMostExpensiveProducts(firstPage(Sort.Direction.ASC));
+        };
+        return best.stream().map(ProductSnapshot::from).toList();
+    }
+
+    // Ties of the queries' own order broken by id, the way the rankings break them
+    private static Pageable firstPage(Sort.Direction idDirection) {
+        return PageRequest.of(0, CAPACITY, Sort.by(idDirection, "id"));
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * The first products of a ranking, at most MAX_LIMIT of them
+     */
+    public List<ProductSnapshot> top(Ranking ranking, int limit) {
+        List<ProductSnapshot> products = lists.get(ranking).published;
+        return products.subList(0, Math.max(0, Math.min(Math.min(limit, MAX_LIMIT), products.size())));
+    }
+
+    /**
+     * The best products of one ranking. Invariant: members are exactly the first
+     * members.size() active products in that order, so removing one keeps it exact,
+     * while a product ranking after the last member is only known to belong if every
+     * active product is a member.
+     */
+    private static final class TopList {
+
+        private final TreeSet<ProductSnapshot> members;
+        private final Map<Long, ProductSnapshot> byId = new HashMap<>();
+        // True when the list holds every active product
+        private boolean complete = true;
+        private volatile List<ProductSnapshot> published = List.of();
+
+        TopList(Comparator<ProductSnapshot> order) {
+            this.members = new TreeSet<>(order);
+        }
+
+        /**
+         * Start over from the first active products of the ranking, at most CAPACITY of them
+         */
+        void reset(List<ProductSnapshot> best) {
+            members.clear();
+            byId.clear();
+            best.forEach(this::add);
+            // A full page may have had more behind it
+            complete = best.size() < CAPACITY;
+        }
+
+        void remove(Long productId) {
+            ProductSnapshot previous = byId.remove(productId);
+            if (previous != null) {
+                members.remove(previous);
+            }
+        }
+
+        void offer(ProductSnapshot product) {
+            if (!complete && (members.isEmpty() || members.comparator().compare(product, members.last()) > 0)) {
+                return;
+            }
+            add(product);
+            if (members.size() > CAPACITY) {
+                byId.remove(members.pollLast().id());
+                complete = false;
+            }
+        }
+
+        boolean isShort() {
+            return !complete && members.size() < MAX_LIMIT;
+        }
+
+        void publish() {
+            published = List.copyOf(members);
+        }
+
+        private void add(ProductSnapshot product) {
+            members.add(product);
+            byId.put(product.id(), product);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over active product names, used for typo-tolerant search.
+ * Trigrams are extracted per word the way pg_trgm does it, and each query word is compared
+ * to the vocabulary of product name words, so "headphnes" still finds "Wireless Headphones".
+ * A lookup only touches the posting lists of the query's trigrams, never every product.
+ */
+@Component
+public class ProductTrigramIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductTrigramIndex.class);
+
+    // Same default as pg_trgm.similarity_threshold
+    static final double SIMILARITY_THRESHOLD = 0.3;
+
+    private final ProductRepository productRepository;
+
+    // Only the "memory" search backend reads this index; Postgres uses pg_trgm instead
+    @Value("#{'${ecommerce.search.backend:memory}' == 'memory'}")
+    private boolean enabled = true;
+
+    // trigram -> name words containing it
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    // name word -> products whose name contains it
+    private final Map<String, Set<Long>> words = new HashMap<>();
+    // product id -> indexed name words, needed to retract a product on update
+    private final Map<Long, Set<String>> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ProductTrigramIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // ==================== MAINTENANCE ====================
+
+    /**
+     * Rebuild the whole index from the database
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        List<ProductSnapshot> snapshots = productRepository.findAllWithCategories().stream()
+                .map(ProductSnapshot::from)
+                .toList();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            words.clear();
+            documents.clear();
+            snapshots.forEach(this::indexUnlocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Product trigram index built: {} products, {} words, {} trigrams",
+                documents.size(), words.size(), postings.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogReloaded(CatalogReloadedEvent event) {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.productId());
+        } else {
+            index(event.snapshot());
+        }
+    }
+
+    /**
+     * Add or replace a product; inactive products are removed from the index
+     */
+    public void index(ProductSnapshot product) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            indexUnlocked(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexUnlocked(ProductSnapshot product) {
+        removeUnlocked(product.id());
+        if (!product.active()) {
+            return;
+        }
+
+        Set<String> nameWords = new HashSet<>(ProductSearchIndex.tokenize(product.name()));
+        for (String word : nameWords) {
+            Set<Long> products = words.get(word);
+            if (products == null) {
+                products = new HashSet<>();
+                words.put(word, products);
+                for (String trigram : trigrams(word)) {
+                    postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(word);
+                }
+            }
+            products.add(product.id());
+        }
+        documents.put(product.id(), nameWords);
+    }
+
+    private void removeUnlocked(Long productId) {
+        Set<String> nameWords = documents.remove(productId);
+        if (nameWords == null) {
+            return;
+        }
+        for (String word : nameWords) {
+            Set<Long> products = words.get(word);
+            if (products == null) {
+                continue;
+            }
+            products.remove(productId);
+            if (products.isEmpty()) {
+                words.remove(word);
+                for (String trigram : trigrams(word)) {
+                    Set<String> trigramWords = postings.get(trigram);
+                    if (trigramWords != null) {
+                        trigramWords.remove(word);
+                        if (trigramWords.isEmpty()) {
+                            postings.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Ids of active products whose name has a word similar to every query word,
+     * most similar first. A blank query matches nothing.
+     */
+    public List<Long> search(String query) {
+        List<String> queryWords = ProductSearchIndex.tokenize(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (String queryWord : queryWords) {
+                Map<Long, Double> wordScores = matchSimilar(queryWord);
+                if (scores == null) {
+                    scores = wordScores;
+                } else {
+                    scores.keySet().retainAll(wordScores.keySet());
+                    for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                        entry.setValue(entry.getValue() + wordScores.get(entry.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            return rank(scores);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Best similarity per product over every name word sharing enough trigrams with the query word
+     */
+    private Map<Long, Double> matchSimilar(String queryWord) {
+        Set<String> queryTrigrams = trigrams(queryWord);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<String> trigramWords = postings.get(trigram);
+            if (trigramWords != null) {
+                trigramWords.forEach(word -> shared.merge(word, 1, Integer::sum));
+            }
+        }
+
+        Map<Long, Double> result = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            double similarity = similarity(entry.getValue(), queryTrigrams.size(), trigrams(entry.getKey()).size());
+            if (similarity >= SIMILARITY_THRESHOLD) {
+                for (Long productId : words.get(entry.getKey())) {
+                    result.merge(productId, similarity, Math::max);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> rank(Map<Long, Double> scores) {
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        return entries.stream().map(Map.Entry::getKey).toList();
+    }
+
+    // ==================== TRIGRAMS ====================
+
+    /**
+     * Trigrams of a single token, padded like pg_trgm: two blanks before, one after
+     */
+    static Set<String> trigrams(String word) {
+        String padded = "  " + word + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Jaccard similarity of two trigram sets, as computed by pg_trgm's similarity()
+     */
+    static double similarity(int shared, int left, int right) {
+        return (double) shared / (left + right - shared);
+    }
+}
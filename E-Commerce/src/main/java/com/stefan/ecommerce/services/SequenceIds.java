@@ -0,0 +1,60 @@
+package com.stefan.ecommerce.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids for rows written with JDBC, taken from the same sequences as the entities' ids and the way
+ * Hibernate's pooled-lo optimizer takes them: each sequence value starts a block of BLOCK_SIZE ids
+ * that this node hands out from memory. Blocks never overlap the ones Hibernate takes, so JDBC and
+ * JPA writers can share a table.
+ */
+@Component
+public class SequenceIds {
+
+    // The allocationSize of the entities' @SequenceGenerator, which is also the sequences' increment
+    static final int BLOCK_SIZE = 50;
+
+    private static final class Block {
+        long next;
+        long end;
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    public SequenceIds(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    public long next(String sequence) {
+        return next(sequence, 1)[0];
+    }
+
+    /**
+     * count ids from the sequence, one database call per BLOCK_SIZE ids at most
+     */
+    public long[] next(String sequence, int count) {
+        Block block = blocks.computeIfAbsent(sequence, name -> new Block());
+        long[] ids = new long[count];
+        synchronized (block) {
+            for (int i = 0; i < count; i++) {
+                if (block.next == block.end) {
+                    block.next = jdbcTemplate.queryForObject(
+                            dialect.getSequenceSupport().getSequenceNextValString(sequence), Long.class);
+                    block.end = block.next + BLOCK_SIZE;
+                }
+                ids[i] = block.next++;
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,183 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.OrderReservation;
+import com.stefan.ecommerce.entities.Order;
+import com.stefan.ecommerce.entities.OrderItem;
+import com.stefan.ecommerce.repositories.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Stock held for pending orders. Adding an item takes its units off the product right away
+ * and the hold lasts for a TTL from the order's last change; confirming converts the hold
+ * into the sale, and an abandoned hold puts the units back. Deadlines live on a hashed timer
+ * wheel, so expiry needs neither a task per hold nor a scan of the orders table. The wheel
+ * is rebuilt from orders.reserved_until at startup, and every expiry is checked against the
+ * locked order row, so holds made or extended on another node are never released early.
+ */
+@Component
+public class StockReservations {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservations.class);
+
+    // With the default one second tick a turn of the wheel is about 17 minutes
+    private static final int BUCKETS = 1024;
+
+    private final OrderRepository orderRepository;
+    private final ProductService productService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Duration tick;
+    private final TimerWheel<Long> wheel;
+
+    public StockReservations(OrderRepository orderRepository,
+                             ProductService productService,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${ecommerce.orders.reservation-ttl:PT15M}") Duration ttl,
+                             @Value("${ecommerce.orders.reservation-tick:PT1S}") Duration tick) {
+        this.orderRepository = orderRepository;
+        this.productService = productService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.tick = tick;
+        this.wheel = new TimerWheel<>(tick, BUCKETS, System.currentTimeMillis());
+    }
+
+    /**
+     * Units per product of the given items, in product id order
+     */
+    public static SortedMap<Long, Integer> quantities(Collection<OrderItem> items) {
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        items.forEach(item -> quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum));
+        return quantities;
+    }
+
+    /**
+     * Take the units off stock in product id order, so concurrent orders lock the product rows in the same order.
+     * Stock UPDATEs clear the persistence context: entities loaded before this call are detached.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void take(SortedMap<Long, Integer> quantities) {
+        quantities.forEach(productService::decreaseStock);
+    }
+
+    /**
+     * Put the units back on stock; entities loaded before this call are detached
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void give(SortedMap<Long, Integer> quantities) {
+        quantities.forEach(productService::increaseStock);
+    }
+
+    /**
+     * Start or restart the order's hold and return when it runs out. The timer is set once the
+     * current transaction commits: a rolled back hold has no row to expire, and the timer of the
+     * hold it would have restarted stays as it was.
+     */
+    public LocalDateTime hold(Long orderId) {
+        Instant until = Instant.now().plus(ttl);
+        afterCommit(() -> wheel.schedule(orderId, until.toEpochMilli()));
+        return LocalDateTime.ofInstant(until, ZoneId.systemDefault());
+    }
+
+    /**
+     * Stop the expiry timer of a hold that was converted or released, once the current transaction
+     * commits; if it rolls back the hold is still in the database and keeps its timer
+     */
+    public void forget(Long orderId) {
+        afterCommit(() -> wheel.cancel(orderId));
+    }
+
+    // Outside a transaction the action runs right away
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    public int openHolds() {
+        return wheel.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleOpenHolds() {
+        List<OrderReservation> reservations = orderRepository.findReservations();
+        reservations.forEach(reservation -> wheel.schedule(reservation.orderId(),
+                reservation.reservedUntil().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        if (!reservations.isEmpty()) {
+            logger.info("Scheduled the expiry of {} open stock holds", reservations.size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ecommerce.orders.reservation-tick:PT1S}",
+            initialDelayString = "${ecommerce.orders.reservation-tick:PT1S}")
+    public void expire() {
+        expire(Instant.now());
+    }
+
+    /**
+     * Release the holds that ran out by the given time, each in its own transaction; returns how many were released
+     */
+    public int expire(Instant now) {
+        int released = 0;
+        for (Long orderId : wheel.advance(now.toEpochMilli())) {
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> release(orderId, now)))) {
+                    released++;
+                }
+            } catch (RuntimeException e) {
+                // The wheel already dropped the hold; try again on the next tick
+                wheel.schedule(orderId, now.plus(tick).toEpochMilli());
+                logger.error("Could not release the stock held for order {}, retrying", orderId, e);
+            }
+        }
+        return released;
+    }
+
+    private boolean release(Long orderId, Instant now) {
+        Order order = orderRepository.findLockedById(orderId).orElse(null);
+        if (order == null || !order.isPending() || !order.isReserved()) {
+            return false;
+        }
+        Instant until = order.getReservedUntil().atZone(ZoneId.systemDefault()).toInstant();
+        if (until.isAfter(now)) {
+            // Extended on another node since this node scheduled it
+            wheel.schedule(orderId, until.toEpochMilli());
+            return false;
+        }
+
+        give(quantities(order.getOrderItems()));
+        orderRepository.findById(orderId).ifPresent(released -> {
+            released.setReservedUntil(null);
+            orderRepository.save(released);
+        });
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.stefan.ecommerce.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel: a ring of buckets, one per tick, and each deadline goes into the bucket
+ * of its tick. Scheduling and cancelling are O(1), and advancing the wheel only visits the
+ * buckets of the ticks that passed. A deadline further out than one turn stays in its bucket
+ * and is looked at once per turn, so open deadlines cost memory but never a full scan.
+ * A key has at most one deadline; scheduling it again replaces the old one.
+ */
+final class TimerWheel<K> {
+
+    private static final class Entry<K> {
+
+        final K key;
+        final long deadline;
+
+        Entry(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<Queue<Entry<K>>> buckets;
+    private final int mask;
+    // The live entry of every key; entries left in a bucket after a cancel or reschedule are dropped when visited
+    private final Map<K, Entry<K>> live = new ConcurrentHashMap<>();
+    private volatile long lastTick;
+
+    TimerWheel(Duration tick, int buckets, long nowMillis) {
+        if (tick.toMillis() <= 0 || Integer.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException("The tick must be positive and the bucket count a power of two");
+        }
+        this.tickMillis = tick.toMillis();
+        this.buckets = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            this.buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        this.mask = buckets - 1;
+        this.lastTick = nowMillis / tickMillis - 1;
+    }
+
+    /**
+     * Under the lock advance() holds, so the entry never lands in a bucket advance() has just
+     * drained for the same tick, which would delay it by a full turn
+     */
+    synchronized void schedule(K key, long deadlineMillis) {
+        Entry<K> entry = new Entry<>(key, deadlineMillis);
+        live.put(key, entry);
+        // The first tick at or after the deadline; one that already passed goes into the next bucket to be visited
+        long tick = Math.max(Math.ceilDiv(deadlineMillis, tickMillis), lastTick + 1);
+        buckets.get((int) (tick & mask)).add(entry);
+    }
+
+    boolean cancel(K key) {
+        return live.remove(key) != null;
+    }
+
+    int size() {
+        return live.size();
+    }
+
+    /**
+     * Move the wheel up to nowMillis and hand back the keys whose deadline passed
+     */
+    synchronized List<K> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        // After a long pause every bucket is visited once, not once per missed tick
+        long lastVisited = Math.min(nowTick, lastTick + buckets.size());
+        List<K> due = new ArrayList<>();
+        for (long tick = lastTick + 1; tick <= lastVisited; tick++) {
+            buckets.get((int) (tick & mask)).removeIf(entry -> {
+                if (live.get(entry.key) != entry) {
+                    return true;
+                }
+                if (entry.deadline > nowMillis) {
+                    return false;
+                }
+                if (live.remove(entry.key, entry)) {
+                    due.add(entry.key);
+                }
+                return true;
+            });
+        }
+        lastTick = Math.max(lastTick, nowTick);
+        return due;
+    }
+}
@@ -38,4 +38,21 @@ INSERT INTO product_categories (product_id, category_id) VALUES
 (7, 3), -- Programming Book -> Books
 (8, 4), -- Garden Tool Set -> Home & Garden
 (9, 5), -- Yoga Mat -> Sports
-(10, 4); -- Coffee Maker -> Home & Garden 
\ No newline at end of file
+(10, 4); -- Coffee Maker -> Home & Garden
+
+-- Stored product counts of the categories above; the application keeps them current from here on
+UPDATE categories SET active_product_count = (SELECT COUNT(*) FROM product_categories pc
+    JOIN products p ON p.id = pc.product_id WHERE pc.category_id = categories.id AND p.active = true);
+
+-- The sample categories are all top-level: each is only its own ancestor in the closure table
+INSERT INTO category_closure (ancestor_id, descendant_id, depth) SELECT id, id, 0 FROM categories;
+
+-- Versions of data that nodes keep in memory, incremented with every write to it
+INSERT INTO cache_versions (name, version) VALUES ('categories', 0);
+
+-- The rows above take explicit ids; sequence ids continue after them. Each sequence value starts
+-- a block of 50 ids (the pooled-lo optimizer), so the next value only has to be past the sample rows
+ALTER SEQUENCE roles_seq RESTART WITH 3;
+ALTER SEQUENCE users_seq RESTART WITH 3;
+ALTER SEQUENCE categories_seq RESTART WITH 6;
+ALTER SEQUENCE products_seq RESTART WITH 11;
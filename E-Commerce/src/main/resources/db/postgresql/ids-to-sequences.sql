@@ -0,0 +1,49 @@
+-- One-off migration for databases created while entity ids were IDENTITY columns.
+-- Ids now come from one <table>_seq sequence per table, handed out in blocks of 50 (pooled-lo):
+-- a sequence value starts a block, so each sequence must continue after the largest id in use.
+-- ddl-auto: update would create the sequences at 1, and the next insert would collide with
+-- existing rows. Run this once, with the application stopped, before starting the new version:
+--
+--   psql -h localhost -U postgres -d e-commerce -f src/main/resources/db/postgresql/ids-to-sequences.sql
+--
+-- Running it again is harmless: it only ever moves a sequence to just past the current rows.
+-- Not for the create-drop profiles, whose data.sql restarts the sequences itself.
+
+BEGIN;
+
+CREATE SEQUENCE IF NOT EXISTS roles_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS profiles_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS addresses_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS categories_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS products_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS reviews_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS wishlists_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS orders_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS order_items_seq START WITH 1 INCREMENT BY 50;
+
+-- The next nextval() returns MAX(id) + 1, the first id of the next block
+SELECT setval('roles_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM roles), false);
+SELECT setval('users_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM users), false);
+SELECT setval('profiles_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM profiles), false);
+SELECT setval('addresses_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM addresses), false);
+SELECT setval('categories_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM categories), false);
+SELECT setval('products_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM products), false);
+SELECT setval('reviews_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM reviews), false);
+SELECT setval('wishlists_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM wishlists), false);
+SELECT setval('orders_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM orders), false);
+SELECT setval('order_items_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM order_items), false);
+
+-- Nothing inserts without an id any more; drop the identity so no second generator is left behind
+ALTER TABLE roles ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE profiles ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE addresses ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE categories ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE products ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE reviews ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE wishlists ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE orders ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE order_items ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+COMMIT;
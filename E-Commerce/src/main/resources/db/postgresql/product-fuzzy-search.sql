@@ -0,0 +1,7 @@
+-- Typo-tolerant name search for the Postgres profile (ecommerce.search.backend=postgres).
+-- The GIN trigram index serves the word-similarity operator (<%) used by
+-- ProductRepository.fuzzySearch, so misspelled queries never fall back to a sequential scan.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING GIN (name gin_trgm_ops);
@@ -0,0 +1,11 @@
+-- Indexes behind the criteria queries of ProductSpecifications on the Postgres profile.
+-- Search terms are matched as LOWER(column) LIKE '%term%': trigram indexes on exactly those
+-- expressions turn the substring match into a bitmap index scan instead of a sequential scan.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_products_lower_name_trgm ON products USING GIN (LOWER(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_products_lower_description_trgm ON products USING GIN (LOWER(description) gin_trgm_ops);
+
+-- "In stock only" listings: sellable rows only, in price order for price bounds and price sorting
+CREATE INDEX IF NOT EXISTS idx_products_in_stock_price_id ON products (price, id) WHERE active AND stock_quantity > 0;
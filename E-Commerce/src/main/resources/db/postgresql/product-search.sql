@@ -0,0 +1,79 @@
+-- Full-text search support for the Postgres profile (ecommerce.search.backend=postgres).
+-- products.search_vector is not mapped by JPA; these triggers keep it in sync with the
+-- product's name (weight A), category names (weight B) and description (weight C).
+-- Function bodies are single-quoted because the Spring script runner splits on ';'.
+
+ALTER TABLE products ADD COLUMN IF NOT EXISTS search_vector tsvector;
+
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+-- Queries are folded to plain letters by ProductSearchIndex.tokenize ("Café" searches cafe:*), so the
+-- document is folded too. unaccent() is only STABLE; naming its dictionary makes this wrapper safe to store.
+CREATE OR REPLACE FUNCTION immutable_unaccent(p_text TEXT)
+RETURNS TEXT AS '
+    SELECT public.unaccent(''public.unaccent''::regdictionary, p_text)
+' LANGUAGE sql IMMUTABLE PARALLEL SAFE STRICT;
+
+CREATE OR REPLACE FUNCTION product_search_document(p_id BIGINT, p_name TEXT, p_description TEXT)
+RETURNS tsvector AS '
+    SELECT setweight(to_tsvector(''simple'', immutable_unaccent(coalesce(p_name, ''''))), ''A'')
+        || setweight(to_tsvector(''simple'', immutable_unaccent(coalesce(string_agg(c.name, '' ''), ''''))), ''B'')
+        || setweight(to_tsvector(''simple'', immutable_unaccent(coalesce(p_description, ''''))), ''C'')
+    FROM product_categories pc
+    JOIN categories c ON c.id = pc.category_id
+    WHERE pc.product_id = p_id
+' LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION products_search_vector_trigger() RETURNS trigger AS '
+BEGIN
+    NEW.search_vector := product_search_document(NEW.id, NEW.name, NEW.description);
+    RETURN NEW;
+END
+' LANGUAGE plpgsql;
+
+-- Statement-level, so a multi-row insert of links (bulk import) refreshes each product once
+CREATE OR REPLACE FUNCTION product_categories_search_vector_trigger() RETURNS trigger AS '
+BEGIN
+    UPDATE products
+    SET search_vector = product_search_document(id, name, description)
+    WHERE id IN (SELECT DISTINCT product_id FROM changed_links);
+    RETURN NULL;
+END
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION categories_search_vector_trigger() RETURNS trigger AS '
+BEGIN
+    UPDATE products
+    SET search_vector = product_search_document(id, name, description)
+    WHERE id IN (SELECT product_id FROM product_categories WHERE category_id = NEW.id);
+    RETURN NULL;
+END
+' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_products_search_vector ON products;
+CREATE TRIGGER trg_products_search_vector
+    BEFORE INSERT OR UPDATE OF name, description ON products
+    FOR EACH ROW EXECUTE FUNCTION products_search_vector_trigger();
+
+-- Transition tables need one trigger per event
+DROP TRIGGER IF EXISTS trg_product_categories_search_vector ON product_categories;
+DROP TRIGGER IF EXISTS trg_product_categories_insert_search_vector ON product_categories;
+CREATE TRIGGER trg_product_categories_insert_search_vector
+    AFTER INSERT ON product_categories
+    REFERENCING NEW TABLE AS changed_links
+    FOR EACH STATEMENT EXECUTE FUNCTION product_categories_search_vector_trigger();
+
+DROP TRIGGER IF EXISTS trg_product_categories_delete_search_vector ON product_categories;
+CREATE TRIGGER trg_product_categories_delete_search_vector
+    AFTER DELETE ON product_categories
+    REFERENCING OLD TABLE AS changed_links
+    FOR EACH STATEMENT EXECUTE FUNCTION product_categories_search_vector_trigger();
+
+DROP TRIGGER IF EXISTS trg_categories_search_vector ON categories;
+CREATE TRIGGER trg_categories_search_vector
+    AFTER UPDATE OF name ON categories
+    FOR EACH ROW EXECUTE FUNCTION categories_search_vector_trigger();
+
+UPDATE products SET search_vector = product_search_document(id, name, description);
+
+CREATE INDEX IF NOT EXISTS idx_products_search_vector ON products USING GIN (search_vector);
@@ -0,0 +1,88 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.CategoryView;
+import com.stefan.ecommerce.services.ActiveCategories;
+import com.stefan.ecommerce.services.CategoryService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+public class ActiveCategoriesTest {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private ActiveCategories activeCategories;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Long> categoryIds = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        categoryIds.forEach(categoryService::permanentlyDeleteCategory);
+    }
+
+    @Test
+    public void testReadsComeFromMemory() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        categoryService.findAllActiveCategories();
+        statistics.clear();
+
+        List<CategoryView> categories = categoryService.findAllActiveCategories();
+
+        assertTrue(names(categories).contains("Electronics"));
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertSame(categories, categoryService.findAllActiveCategories());
+    }
+
+    @Test
+    public void testCategoryWritesSwapTheSnapshot() {
+        long version = activeCategories.current().version();
+
+        Long id = categoryService.createCategory("Snapshot garden", null, null).getId();
+        categoryIds.add(id);
+        assertTrue(names(categoryService.findAllActiveCategories()).contains("Snapshot garden"));
+        assertTrue(activeCategories.current().version() > version);
+
+        categoryService.deactivateCategory(id);
+        assertFalse(names(categoryService.findAllActiveCategories()).contains("Snapshot garden"));
+    }
+
+    @Test
+    public void testWritesFromAnotherNodeArriveWithThePoll() {
+        // Another node writes the row and bumps the stored version in its transaction
+        Long id = categoryService.createCategory("Snapshot toys", null, null).getId();
+        categoryIds.add(id);
+        jdbcTemplate.update("UPDATE categories SET name = 'Snapshot games' WHERE id = ?", id);
+        jdbcTemplate.update("UPDATE cache_versions SET version = version + 1 WHERE name = 'categories'");
+
+        activeCategories.poll();
+
+        assertTrue(names(categoryService.findAllActiveCategories()).contains("Snapshot games"));
+        assertEquals(jdbcTemplate.queryForObject("SELECT version FROM cache_versions WHERE name = 'categories'", Long.class),
+                activeCategories.current().version());
+    }
+
+    private static List<String> names(List<CategoryView> categories) {
+        return categories.stream().map(CategoryView::name).toList();
+    }
+}
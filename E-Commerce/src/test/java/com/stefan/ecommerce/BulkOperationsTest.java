@@ -0,0 +1,156 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.services.CategoryProductCounts;
+import com.stefan.ecommerce.services.CategoryService;
+import com.stefan.ecommerce.services.ProductService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Admin bulk operations over a few thousand products, written with set-based statements
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+public class BulkOperationsTest {
+
+    private static final int PRODUCTS = 2_500;
+    private static final long FIRST_ID = CatalogFixtures.FIRST_ID;
+    private static final long BOOKS = 3;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Long> productIds = LongStream.range(FIRST_ID, FIRST_ID + PRODUCTS).boxed().toList();
+    private final List<Long> categoryIds = new ArrayList<>();
+    private CatalogFixtures fixtures;
+
+    @BeforeEach
+    public void insertProducts() {
+        fixtures = new CatalogFixtures(context);
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (long id : productIds) {
+            Product product = CatalogFixtures.product(id, "Bulk product " + id, BigDecimal.valueOf(15), 10);
+            product.getCategories().add(CatalogFixtures.category(BOOKS));
+            products.add(product);
+        }
+        fixtures.insertProducts(products);
+    }
+
+    @AfterEach
+    public void deleteProducts() {
+        fixtures.deleteAll();
+        categoryIds.forEach(categoryService::permanentlyDeleteCategory);
+    }
+
+    @Test
+    public void testProductStatusChangesAreSetBased() {
+        int books = count(BOOKS);
+        long indexedBooks = productService.getProductCountByCategory(BOOKS);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Duplicates and unknown ids are ignored
+        List<Long> ids = new ArrayList<>(productIds);
+        ids.add(FIRST_ID);
+        ids.add(FIRST_ID - 1);
+        assertEquals(PRODUCTS, productService.deactivateProducts(ids));
+
+        // Two statements per batch of 1000 ids, then one reload per in-memory view after commit
+        assertTrue(statistics.getPrepareStatementCount() <= 15, "statements: " + statistics.getPrepareStatementCount());
+        assertEquals(books - PRODUCTS, count(BOOKS));
+        assertEquals(indexedBooks - PRODUCTS, productService.getProductCountByCategory(BOOKS));
+
+        assertEquals(0, productService.deactivateProducts(productIds));
+        assertEquals(books - PRODUCTS, count(BOOKS));
+
+        assertEquals(PRODUCTS, productService.activateProducts(productIds));
+        assertEquals(books, count(BOOKS));
+        assertEquals(0, categoryProductCounts.reconcile());
+    }
+
+    @Test
+    public void testCategoryStatusChangesAreSetBased() {
+        Long first = createCategory("Bulk first");
+        Long second = createCategory("Bulk second");
+
+        assertEquals(2, categoryService.deactivateCategories(List.of(first, second, first)));
+        assertFalse(active(first) || active(second));
+        assertEquals(2, categoryService.activateCategories(List.of(first, second)));
+        assertTrue(active(first) && active(second));
+
+        jdbcTemplate.update("INSERT INTO product_categories (product_id, category_id) VALUES (?, ?)", FIRST_ID, second);
+        assertEquals(1, categoryService.deleteEmptyCategories());
+        assertFalse(active(first));
+        assertTrue(active(second));
+        jdbcTemplate.update("DELETE FROM product_categories WHERE category_id = ?", second);
+    }
+
+    @Test
+    public void testForceDeleteUnlinksEveryProductAtOnce() {
+        Long clearance = createCategory("Bulk clearance");
+        jdbcTemplate.batchUpdate("INSERT INTO product_categories (product_id, category_id) VALUES (?, ?)",
+                productIds.stream().map(id -> new Object[]{id, clearance}).toList());
+        categoryProductCounts.reconcile();
+        int books = count(BOOKS);
+        assertEquals(PRODUCTS, count(clearance));
+
+        categoryService.forceDeleteCategory(clearance);
+
+        assertFalse(active(clearance));
+        assertEquals(0, count(clearance));
+        assertEquals(0, categoryService.getProductCountInCategory(clearance));
+        assertEquals(books, count(BOOKS));
+        assertEquals(0, categoryProductCounts.reconcile());
+    }
+
+    private Long createCategory(String name) {
+        Long id = categoryService.createCategory(name, null, null).getId();
+        categoryIds.add(id);
+        return id;
+    }
+
+    private boolean active(Long categoryId) {
+        return categoryRepository.findById(categoryId).map(Category::getActive).orElseThrow();
+    }
+
+    private int count(long categoryId) {
+        return categoryRepository.findById(categoryId).orElseThrow().getActiveProductCount();
+    }
+}
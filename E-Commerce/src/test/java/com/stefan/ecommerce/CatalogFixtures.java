@@ -0,0 +1,99 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.services.CategoryProductCounts;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Products and categories for integration tests, under explicit ids from FIRST_ID up, well above
+ * the sample data. Rows are written with plain JDBC, which publishes no product events, so every
+ * insert and delete is followed by the events a bulk admin operation publishes: the in-memory
+ * catalog views reload and never keep a product after its row is gone, whatever ran before.
+ */
+public class CatalogFixtures {
+
+    public static final long FIRST_ID = 1_000_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationContext context;
+
+    public CatalogFixtures(ApplicationContext context) {
+        this.jdbcTemplate = context.getBean(JdbcTemplate.class);
+        this.context = context;
+    }
+
+    /**
+     * An active product to insert; set more fields or add categories first
+     */
+    public static Product product(long id, String name, BigDecimal price, int stock) {
+        Product product = new Product(name, null, price, stock);
+        product.setId(id);
+        return product;
+    }
+
+    /**
+     * A category reference to link a fixture product to
+     */
+    public static Category category(long id) {
+        Category category = new Category();
+        category.setId(id);
+        return category;
+    }
+
+    /**
+     * Insert the products and their links to product.getCategories()
+     */
+    public void insertProducts(Collection<Product> products) {
+        List<Object[]> rows = new ArrayList<>(products.size());
+        List<Object[]> links = new ArrayList<>();
+        for (Product product : products) {
+            rows.add(new Object[]{product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                    product.getStockQuantity(), product.getDimensions(), product.getWeightKg(), product.getImageUrl(),
+                    product.getActive(), Timestamp.valueOf(product.getCreatedAt()), Timestamp.valueOf(product.getUpdatedAt())});
+            product.getCategories().forEach(category -> links.add(new Object[]{product.getId(), category.getId()}));
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, name, description, price, stock_quantity, dimensions, " +
+                "weight_kg, image_url, active, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.batchUpdate("INSERT INTO product_categories (product_id, category_id) VALUES (?, ?)", links);
+        catalogChanged(products.size());
+    }
+
+    /**
+     * Insert an active top-level category
+     */
+    public void insertCategory(long id, String name) {
+        jdbcTemplate.update("INSERT INTO categories (id, name, active, created_at, updated_at) " +
+                "VALUES (?, ?, true, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", id, name);
+        jdbcTemplate.update("INSERT INTO category_closure (ancestor_id, descendant_id, depth) VALUES (?, ?, 0)", id, id);
+        context.publishEvent(CategoryChangedEvent.several());
+    }
+
+    /**
+     * Delete every fixture product and category with their links. Orders holding fixture products
+     * are the test's to delete first.
+     */
+    public void deleteAll() {
+        jdbcTemplate.update("DELETE FROM product_categories WHERE product_id >= ? OR category_id >= ?", FIRST_ID, FIRST_ID);
+        int products = jdbcTemplate.update("DELETE FROM products WHERE id >= ?", FIRST_ID);
+        jdbcTemplate.update("DELETE FROM category_closure WHERE ancestor_id >= ? OR descendant_id >= ?", FIRST_ID, FIRST_ID);
+        if (jdbcTemplate.update("DELETE FROM categories WHERE id >= ?", FIRST_ID) > 0) {
+            context.publishEvent(CategoryChangedEvent.several());
+        }
+        catalogChanged(products);
+    }
+
+    private void catalogChanged(int products) {
+        context.getBean(CategoryProductCounts.class).reconcile();
+        context.publishEvent(new CatalogReloadedEvent(products));
+    }
+}
@@ -0,0 +1,60 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.controllers.CatalogFragmentCache;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class CatalogFragmentCacheTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CatalogFragmentCache catalogFragmentCache;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    public void testCatalogBodyIsCachedUntilTheCatalogChanges() throws Exception {
+        String key = catalogFragmentCache.key("products/catalog", null, 0, 12, "price", "desc",
+                "[]", null, false, null, null, null, false, null);
+
+        mockMvc.perform(get("/products").param("sortBy", "price").param("sortDir", "desc"))
+                .andExpect(status().isOk());
+        String cached = catalogFragmentCache.get(key);
+        assertNotNull(cached, "Anonymous catalog body should be cached");
+        assertFalse(cached.contains("wishlist-btn"), "Anonymous body has no wishlist buttons");
+
+        mockMvc.perform(get("/products").param("sortBy", "price").param("sortDir", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(cached)));
+
+        Product product = productService.findById(1L).orElseThrow();
+        int stock = product.getStockQuantity();
+        try {
+            productService.updateStock(1L, stock + 5);
+            String newKey = catalogFragmentCache.key("products/catalog", null, 0, 12, "price", "desc",
+                    "[]", null, false, null, null, null, false, null);
+            assertNotEquals(key, newKey, "A write should bump the catalog version");
+            assertNull(catalogFragmentCache.get(newKey));
+        } finally {
+            productService.updateStock(1L, stock);
+        }
+    }
+}
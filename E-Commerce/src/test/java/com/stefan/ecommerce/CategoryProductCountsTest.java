@@ -0,0 +1,103 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.services.CategoryProductCounts;
+import com.stefan.ecommerce.services.CategoryService;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class CategoryProductCountsTest {
+
+    private static final long ELECTRONICS = 1;
+    private static final long BOOKS = 3;
+    private static final long SPORTS = 5;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long productId;
+
+    @AfterEach
+    public void tearDown() {
+        if (productId != null && productService.findById(productId).isPresent()) {
+            productService.permanentlyDeleteProduct(productId);
+        }
+        categoryProductCounts.reconcile();
+    }
+
+    @Test
+    public void testCountsFollowAssignmentAndActivation() {
+        int electronics = count(ELECTRONICS);
+        int books = count(BOOKS);
+        int sports = count(SPORTS);
+
+        Product product = productService.createProduct("Counted watch", null, new BigDecimal("99.00"), 3,
+                null, null, null, Set.of());
+        productId = product.getId();
+        assertCounts(electronics, books, sports);
+        productService.updateProductCategories(productId, List.of(ELECTRONICS, SPORTS));
+        assertCounts(electronics + 1, books, sports + 1);
+
+        productService.deactivateProduct(productId);
+        assertCounts(electronics, books, sports);
+
+        // Category changes of an inactive product do not count until it is activated again
+        productService.updateProductCategories(productId, List.of(BOOKS, SPORTS));
+        assertCounts(electronics, books, sports);
+        productService.activateProduct(productId);
+        assertCounts(electronics, books + 1, sports + 1);
+
+        categoryService.removeProductFromCategory(SPORTS, productId);
+        productService.addCategoryToProduct(productId, ELECTRONICS);
+        assertCounts(electronics + 1, books + 1, sports);
+
+        productService.permanentlyDeleteProduct(productId);
+        assertCounts(electronics, books, sports);
+    }
+
+    @Test
+    public void testReconciliationRepairsDrift() {
+        int books = count(BOOKS);
+        jdbcTemplate.update("UPDATE categories SET active_product_count = 99 WHERE id = ?", BOOKS);
+
+        assertEquals(1, categoryProductCounts.reconcile());
+        assertEquals(books, count(BOOKS));
+        assertEquals(0, categoryProductCounts.reconcile());
+    }
+
+    private void assertCounts(int electronics, int books, int sports) {
+        assertEquals(List.of(electronics, books, sports), List.of(count(ELECTRONICS), count(BOOKS), count(SPORTS)));
+        // The stored counts always agree with a recount
+        assertEquals(electronics, categoryService.getProductCountInCategory(ELECTRONICS));
+    }
+
+    private int count(long categoryId) {
+        return categoryRepository.findById(categoryId).orElseThrow().getActiveProductCount();
+    }
+}
@@ -0,0 +1,197 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.ProductCardView;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.services.CategoryProductCounts;
+import com.stefan.ecommerce.services.CategoryService;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Electronics > Audio > Headphones built on top of the sample data in data.sql
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class CategoryTreeTest {
+
+    private static final long ELECTRONICS = 1;
+    private static final long SPORTS = 5;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long audioId;
+    private Long headphonesId;
+    private Long productId;
+
+    @BeforeEach
+    public void setUp() {
+        audioId = categoryService.createCategory("Audio", "Speakers and more", null, ELECTRONICS).getId();
+        headphonesId = categoryService.createCategory("Headphones", null, null, audioId).getId();
+
+        Product product = productService.createProduct("Studio Monitor Headphones", "Closed-back", new BigDecimal("149.00"), 4,
+                null, null, null, Set.of());
+        productId = product.getId();
+        // Also linked directly to Electronics, yet listed once in its subtree
+        productService.updateProductCategories(productId, List.of(ELECTRONICS, headphonesId));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productService.permanentlyDeleteProduct(productId);
+        categoryService.permanentlyDeleteCategory(headphonesId);
+        categoryService.permanentlyDeleteCategory(audioId);
+        categoryProductCounts.reconcile();
+    }
+
+    @Test
+    public void testSubtreeQueriesIncludeSubcategories() {
+        long direct = productService.getProductCountByCategory(ELECTRONICS);
+
+        assertEquals(direct, productService.getProductCountByCategorySubtree(ELECTRONICS));
+        assertEquals(1, productService.getProductCountByCategorySubtree(audioId));
+        assertEquals(List.of("Studio Monitor Headphones"),
+                names(productService.findByCategorySubtree(audioId, PageRequest.of(0, 12)).getContent()));
+
+        productService.updateProductCategories(productId, List.of(headphonesId));
+        assertEquals(direct, productService.getProductCountByCategorySubtree(ELECTRONICS));
+        assertEquals(direct - 1, productService.getProductCountByCategory(ELECTRONICS));
+
+        // Keyset pages walk the same subtree
+        List<ProductCardView> firstTwo = productService.findActiveProductsInCategorySubtree(ELECTRONICS, null, 2, "price", Sort.Direction.DESC).content();
+        assertEquals(2, firstTwo.size());
+        assertEquals(productService.findByCategorySubtree(ELECTRONICS, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "price"))).getContent(),
+                firstTwo);
+    }
+
+    @Test
+    public void testAncestorsAndSubcategories() {
+        assertEquals(List.of("Electronics", "Audio"), categoryNames(categoryService.findAncestors(headphonesId)));
+        assertEquals(List.of("Headphones"), categoryNames(categoryService.findSubcategories(audioId)));
+        assertTrue(categoryService.hasSubcategories(ELECTRONICS));
+        assertFalse(categoryService.hasSubcategories(headphonesId));
+    }
+
+    @Test
+    public void testMoveRewritesTheSubtreePaths() {
+        categoryService.moveCategory(audioId, SPORTS);
+
+        assertEquals(List.of("Sports", "Audio"), categoryNames(categoryService.findAncestors(headphonesId)));
+        assertEquals(1, productService.getProductCountByCategorySubtree(SPORTS) - productService.getProductCountByCategory(SPORTS));
+        assertFalse(categoryService.hasSubcategories(ELECTRONICS));
+
+        // A category cannot end up below itself
+        assertThrows(IllegalArgumentException.class, () -> categoryService.moveCategory(audioId, headphonesId));
+        assertThrows(IllegalArgumentException.class, () -> categoryService.moveCategory(audioId, audioId));
+
+        categoryService.moveCategory(audioId, null);
+        assertEquals(List.of("Audio"), categoryNames(categoryService.findAncestors(headphonesId)));
+        assertEquals(1, productService.getProductCountByCategorySubtree(audioId));
+    }
+
+    @Test
+    public void testConcurrentMovesCannotCloseALoop() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reverse = new TransactionTemplate(transactionManager).execute(status -> {
+                categoryService.moveCategory(audioId, SPORTS);
+                // Checked against the tree before this move commits, Sports under Audio would pass too
+                Future<?> pending = executor.submit(() -> categoryService.moveCategory(SPORTS, audioId));
+                sleep(300);
+                assertFalse(pending.isDone());
+                return pending;
+            });
+
+            ExecutionException refused = assertThrows(ExecutionException.class, () -> reverse.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, refused.getCause());
+            assertEquals(List.of("Sports", "Audio"), categoryNames(categoryService.findAncestors(headphonesId)));
+            assertTrue(categoryService.findAncestors(SPORTS).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCategoryPageListsTheSubtree() throws Exception {
+        // Category pages are for signed-in customers
+        assertThrows(IllegalArgumentException.class, () -> categoryService.permanentlyDeleteCategory(audioId));
+        productService.updateProductCategories(productId, List.of(headphonesId));
+
+        MockHttpSession session = new MockHttpSession();
+        String etag = mockMvc.perform(get("/products/category/" + ELECTRONICS).session(session).with(user("shopper").roles("USER")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Studio Monitor Headphones")))
+                .andExpect(content().string(containsString("/products/category/" + audioId)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/products/category/" + headphonesId).session(session).with(user("shopper").roles("USER")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("/products/category/" + ELECTRONICS)));
+
+        // Moving the subtree away changes what the Electronics page shows
+        categoryService.moveCategory(audioId, null);
+        mockMvc.perform(get("/products/category/" + ELECTRONICS).session(session).with(user("shopper").roles("USER")).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string(not(containsString("Studio Monitor Headphones"))));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> names(List<ProductCardView> products) {
+        return products.stream().map(ProductCardView::name).toList();
+    }
+
+    private static List<String> categoryNames(List<Category> categories) {
+        return categories.stream().map(Category::getName).toList();
+    }
+}
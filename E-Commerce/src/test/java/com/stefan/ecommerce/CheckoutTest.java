@@ -0,0 +1,161 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.OrderLine;
+import com.stefan.ecommerce.entities.Order;
+import com.stefan.ecommerce.entities.User;
+import com.stefan.ecommerce.repositories.UserRepository;
+import com.stefan.ecommerce.services.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A 50-line order placed in a handful of statements
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CheckoutTest {
+
+    private static final int LINES = 50;
+    private static final long FIRST_ID = CatalogFixtures.FIRST_ID;
+    private static final int STOCK = 5;
+
+    // Statements prepared on the test thread, counted at the JDBC connection so JdbcTemplate is included
+    private static final AtomicInteger statements = new AtomicInteger();
+    private static volatile Thread countedThread;
+
+    @TestConfiguration
+    static class StatementCounting {
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? new CountingDataSource(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    static class CountingDataSource extends DelegatingDataSource {
+
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("prepare") && Thread.currentThread() == countedThread) {
+                            statements.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+    private final List<Long> productIds = LongStream.range(FIRST_ID, FIRST_ID + LINES).boxed().toList();
+    private User user;
+    private Long orderId;
+
+    @BeforeEach
+    public void setUp() {
+        fixtures = new CatalogFixtures(context);
+        fixtures.insertProducts(productIds.stream()
+                .map(id -> CatalogFixtures.product(id, "Checkout product " + id, BigDecimal.valueOf(id - FIRST_ID + 1), STOCK))
+                .toList());
+        user = userRepository.findById(2L).orElseThrow();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        countedThread = null;
+        jdbcTemplate.update("DELETE FROM order_items WHERE product_id >= ?", FIRST_ID);
+        jdbcTemplate.update("DELETE FROM orders WHERE id = ?", orderId);
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testFiftyLinesCostAHandfulOfStatements() {
+        List<OrderLine> lines = new ArrayList<>();
+        // Out of id order, and one product on two lines
+        productIds.reversed().forEach(id -> lines.add(new OrderLine(id, 2)));
+        lines.add(new OrderLine(FIRST_ID, 1));
+
+        statements.set(0);
+        countedThread = Thread.currentThread();
+        Order order = orderService.checkout(user, lines);
+        countedThread = null;
+        orderId = order.getId();
+
+        // Products, categories for the change events, the stock batch and its read-back, the order, the item batch, the order again
+        assertTrue(statements.get() <= 8, "statements: " + statements.get());
+        assertEquals(Order.OrderStatus.CONFIRMED, order.getStatus());
+        // 2 x (1 + 2 + ... + 50) + 1
+        assertEquals(0, new BigDecimal(2 * LINES * (LINES + 1) / 2 + 1).compareTo(order.getTotalAmount()));
+        assertEquals(LINES, count("SELECT COUNT(*) FROM order_items WHERE order_id = ?", order.getId()));
+        assertEquals(STOCK - 3, count("SELECT stock_quantity FROM products WHERE id = ?", FIRST_ID));
+        assertEquals(STOCK - 2, count("SELECT stock_quantity FROM products WHERE id = ?", FIRST_ID + LINES - 1));
+    }
+
+    @Test
+    public void testOneShortLineFailsTheWholeOrder() {
+        List<OrderLine> lines = new ArrayList<>();
+        productIds.forEach(id -> lines.add(new OrderLine(id, 1)));
+        lines.add(new OrderLine(FIRST_ID + 7, STOCK));
+
+        IllegalArgumentException shortage = assertThrows(IllegalArgumentException.class, () -> orderService.checkout(user, lines));
+
+        assertTrue(shortage.getMessage().startsWith("Insufficient stock for Checkout product " + (FIRST_ID + 7)), shortage.getMessage());
+        assertEquals(LINES * STOCK, count("SELECT SUM(stock_quantity) FROM products WHERE id >= ?", FIRST_ID));
+        assertEquals(0, count("SELECT COUNT(*) FROM order_items WHERE product_id >= ?", FIRST_ID));
+        assertThrows(IllegalArgumentException.class, () -> orderService.checkout(user, List.of(new OrderLine(FIRST_ID - 1_000, 1))));
+        assertThrows(IllegalArgumentException.class, () -> orderService.checkout(user, List.of()));
+    }
+
+    private int count(String sql, Object argument) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, argument);
+    }
+}
@@ -0,0 +1,65 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ConditionalGetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    public void testProductPageAnswers304UntilTheProductChanges() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        String etag = mockMvc.perform(get("/products/1").session(session))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/products/1").session(session).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        // Another session renders a different CSRF token, so it must not reuse this copy
+        mockMvc.perform(get("/products/1").session(new MockHttpSession()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        Product product = productService.findById(1L).orElseThrow();
+        int stock = product.getStockQuantity();
+        try {
+            productService.updateStock(1L, stock + 5);
+            mockMvc.perform(get("/products/1").session(session).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isOk());
+        } finally {
+            productService.updateStock(1L, stock);
+        }
+    }
+
+    @Test
+    public void testCategoryListingAnswers304() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        String etag = mockMvc.perform(get("/categories").session(session))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/categories").session(session).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+}
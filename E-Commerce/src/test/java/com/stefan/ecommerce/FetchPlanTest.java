@@ -0,0 +1,127 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Product;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Pages that walk associations must issue the same number of statements however many rows they show
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class FetchPlanTest {
+
+    private static final long FIRST_ID = CatalogFixtures.FIRST_ID;
+    private static final long ORDER_ID = FIRST_ID;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        fixtures = new CatalogFixtures(context);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        jdbcTemplate.update("INSERT INTO orders (id, order_number, user_id, status, total_amount, order_date) " +
+                "VALUES (?, 'ORD-FETCHPLAN', 1, 'PENDING', 10.00, CURRENT_TIMESTAMP)", ORDER_ID);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id = ?", ORDER_ID);
+        jdbcTemplate.update("DELETE FROM orders WHERE id = ?", ORDER_ID);
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testCategoryBrowsingDoesNotLoadProductsPerCategory() throws Exception {
+        RequestBuilder browse = get("/categories");
+        long before = statementsFor(browse);
+
+        List<Product> products = new ArrayList<>();
+        for (long i = 0; i < 5; i++) {
+            fixtures.insertCategory(FIRST_ID + i, "Fetch plan category " + (FIRST_ID + i));
+            products.add(product(FIRST_ID + i, FIRST_ID + i, 1L));
+        }
+        fixtures.insertProducts(products);
+        assertEquals(before, statementsFor(browse));
+    }
+
+    @Test
+    public void testAdminProductListBatchesCategories() throws Exception {
+        RequestBuilder list = get("/products/admin/list").with(user("admin").roles("ADMIN"));
+        long before = statementsFor(list);
+
+        fixtures.insertCategory(FIRST_ID, "Fetch plan category " + FIRST_ID);
+        List<Product> products = new ArrayList<>();
+        for (long i = 0; i < 15; i++) {
+            products.add(product(FIRST_ID + i, FIRST_ID, 1L + i % 5));
+        }
+        fixtures.insertProducts(products);
+        assertEquals(before, statementsFor(list));
+    }
+
+    @Test
+    public void testOrderDetailsLoadItemsAndProductsTogether() throws Exception {
+        RequestBuilder details = get("/orders/" + ORDER_ID).with(user("admin").roles("ADMIN"));
+        insertOrderItem(FIRST_ID, 1L);
+        long before = statementsFor(details);
+
+        for (long i = 1; i < 5; i++) {
+            insertOrderItem(FIRST_ID + i, 1L + i);
+        }
+        assertEquals(before, statementsFor(details));
+    }
+
+    private long statementsFor(RequestBuilder request) throws Exception {
+        statistics.clear();
+        mockMvc.perform(request).andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static Product product(long id, long... categoryIds) {
+        Product product = CatalogFixtures.product(id, "Fetch plan product " + id, new BigDecimal("9.99"), 5);
+        for (long categoryId : categoryIds) {
+            product.getCategories().add(CatalogFixtures.category(categoryId));
+        }
+        return product;
+    }
+
+    private void insertOrderItem(long id, long productId) {
+        jdbcTemplate.update("INSERT INTO order_items (id, order_id, product_id, quantity, unit_price, subtotal) " +
+                "VALUES (?, ?, ?, 1, 10.00, 10.00)", id, ORDER_ID, productId);
+    }
+}
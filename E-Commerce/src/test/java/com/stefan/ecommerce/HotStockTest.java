@@ -0,0 +1,237 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.OrderLine;
+import com.stefan.ecommerce.entities.User;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import com.stefan.ecommerce.repositories.UserRepository;
+import com.stefan.ecommerce.services.HotStock;
+import com.stefan.ecommerce.services.OrderService;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * A flash-sale product served from in-memory counters and written back later
+ */
+@SpringBootTest(properties = "ecommerce.stock.hot.flush-interval=PT1H")
+@ActiveProfiles("test")
+public class HotStockTest {
+
+    private static final long PRODUCT_ID = CatalogFixtures.FIRST_ID;
+    // An ordinary product, stored in the database only
+    private static final long OTHER_ID = PRODUCT_ID + 1;
+    private static final int STOCK = 300;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private HotStock hotStock;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Real, except where a test makes the write-back fail
+    @MockitoSpyBean
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+
+    @BeforeEach
+    public void insertProduct() {
+        fixtures = new CatalogFixtures(context);
+        fixtures.insertProducts(List.of(CatalogFixtures.product(PRODUCT_ID, "Flash sale console", BigDecimal.TEN, STOCK),
+                CatalogFixtures.product(OTHER_ID, "Console stand", BigDecimal.ONE, 1)));
+        hotStock.enable(PRODUCT_ID);
+    }
+
+    @AfterEach
+    public void deleteProduct() {
+        hotStock.disable(PRODUCT_ID);
+        jdbcTemplate.update("DELETE FROM order_items WHERE product_id >= ?", PRODUCT_ID);
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testSalesAreTakenInMemoryAndWrittenBack() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> orders = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            orders.add(executor.submit(() -> {
+                start.await();
+                try {
+                    productService.decreaseStock(PRODUCT_ID, 1);
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int sold = 0;
+        for (Future<Boolean> order : orders) {
+            sold += order.get(60, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(STOCK, sold);
+        assertFalse(productService.isInStock(PRODUCT_ID, 1));
+        // Nothing reached the row yet
+        assertEquals(STOCK, stock());
+
+        hotStock.flush();
+        assertEquals(0, stock());
+    }
+
+    @Test
+    public void testUnitsSpreadOverStripesCanStillBeSoldTogether() {
+        // Far more than any single stripe holds
+        productService.decreaseStock(PRODUCT_ID, STOCK - 1);
+        assertThrows(IllegalArgumentException.class, () -> productService.decreaseStock(PRODUCT_ID, 2));
+
+        productService.increaseStock(PRODUCT_ID, 5);
+        assertEquals(6, hotStock.available(PRODUCT_ID).orElseThrow());
+
+        hotStock.flush();
+        assertEquals(6, stock());
+    }
+
+    @Test
+    public void testTurningHotModeOffReturnsToTheDatabase() {
+        productService.decreaseStock(PRODUCT_ID, 10);
+        hotStock.disable(PRODUCT_ID);
+
+        assertFalse(hotStock.isHot(PRODUCT_ID));
+        assertEquals(STOCK - 10, stock());
+        assertEquals(STOCK - 11, productService.decreaseStock(PRODUCT_ID, 1).getStockQuantity());
+
+        // Setting the stock of a hot product starts it over from the new level
+        hotStock.enable(PRODUCT_ID);
+        productService.decreaseStock(PRODUCT_ID, 4);
+        productService.updateStock(PRODUCT_ID, 50);
+        assertEquals(50, stock());
+        assertEquals(50, hotStock.available(PRODUCT_ID).orElseThrow());
+    }
+
+    @Test
+    public void testUnitsTakenByAFailedCheckoutComeBack() {
+        User user = userRepository.findById(2L).orElseThrow();
+        // The console is taken from the counters before the stand turns out to be short
+        List<OrderLine> lines = List.of(new OrderLine(PRODUCT_ID, 5), new OrderLine(OTHER_ID, 2));
+
+        assertThrows(IllegalArgumentException.class, () -> orderService.checkout(user, lines));
+
+        assertEquals(STOCK, hotStock.available(PRODUCT_ID).orElseThrow());
+        hotStock.flush();
+        assertEquals(STOCK, stock());
+    }
+
+    @Test
+    public void testUnitsTakenBeforeHotModeEndsComeBackToTheRow() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            productService.decreaseStock(PRODUCT_ID, 5);
+            // The sale is written back and its counters are gone by the time the transaction rolls back
+            hotStock.disable(PRODUCT_ID);
+            hotStock.flush();
+            status.setRollbackOnly();
+        });
+
+        assertFalse(hotStock.isHot(PRODUCT_ID));
+        assertEquals(STOCK, stock());
+    }
+
+    @Test
+    public void testRolledBackStockUpdateKeepsTheSalesWrittenBack() {
+        productService.decreaseStock(PRODUCT_ID, 4);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            productService.updateStock(PRODUCT_ID, 50);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(STOCK - 4, stock());
+        assertEquals(STOCK - 4, hotStock.available(PRODUCT_ID).orElseThrow());
+    }
+
+    @Test
+    public void testFailedWriteBackFailsOnlyTheStockUpdate() {
+        productService.decreaseStock(PRODUCT_ID, 4);
+        doThrow(new QueryTimeoutException("Lock wait timed out"))
+                .when(productRepository).consumeStock(eq(PRODUCT_ID), anyLong(), any());
+
+        assertThrows(QueryTimeoutException.class, () -> productService.updateStock(PRODUCT_ID, 50));
+        reset(productRepository);
+
+        // The sales are still owed to the row and the counters go on selling what is left
+        assertEquals(STOCK, stock());
+        assertEquals(STOCK - 4, hotStock.available(PRODUCT_ID).orElseThrow());
+        productService.decreaseStock(PRODUCT_ID, 1);
+        hotStock.flush();
+        assertEquals(STOCK - 5, stock());
+    }
+
+    @Test
+    public void testOrdersAreTurnedAwayWhileTheStockIsSet() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                productService.updateStock(PRODUCT_ID, 50);
+                // Neither sold from the old counters nor from the row this transaction is writing
+                Future<?> order = executor.submit(() -> productService.decreaseStock(PRODUCT_ID, 1));
+                ExecutionException refused = assertThrows(ExecutionException.class, () -> order.get(10, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalArgumentException.class, refused.getCause());
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(50, stock());
+        assertEquals(50, hotStock.available(PRODUCT_ID).orElseThrow());
+        productService.decreaseStock(PRODUCT_ID, 1);
+        assertEquals(49, hotStock.available(PRODUCT_ID).orElseThrow());
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM products WHERE id = ?", Integer.class, PRODUCT_ID);
+    }
+}
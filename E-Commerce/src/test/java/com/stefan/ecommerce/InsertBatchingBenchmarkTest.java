@@ -0,0 +1,102 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Products persisted through JPA one INSERT per round trip, the way IDENTITY ids forced it, and in
+ * JDBC batches now that ids come from a pooled-lo sequence.
+ * Run with: mvn test -Dtest=InsertBatchingBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class InsertBatchingBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(InsertBatchingBenchmarkTest.class);
+
+    private static final int PRODUCTS = 20_000;
+    // Rows per transaction, flushed and cleared every BATCH_SIZE rows
+    private static final int CHUNK = 2_000;
+    private static final int BATCH_SIZE = 50;
+    private static final String NAME_PREFIX = "Batching benchmark ";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void deleteProducts() {
+        jdbcTemplate.update("DELETE FROM products WHERE name LIKE ?", NAME_PREFIX + "%");
+    }
+
+    @Test
+    public void testBatchedInsertsOutrunSingleRowInserts() {
+        // Warm up both paths so class loading and statement caching are not measured
+        insertProducts(1, 2_000);
+        insertProducts(BATCH_SIZE, 2_000);
+        deleteProducts();
+
+        long singleNanos = insertProducts(1, PRODUCTS);
+        deleteProducts();
+        long batchedNanos = insertProducts(BATCH_SIZE, PRODUCTS);
+
+        logger.info("Persisting {} products: one row per round trip {} rows/s, batches of {} {} rows/s ({}x)",
+                PRODUCTS, Math.round(rowsPerSecond(singleNanos)), BATCH_SIZE, Math.round(rowsPerSecond(batchedNanos)),
+                String.format("%.1f", (double) singleNanos / batchedNanos));
+        assertEquals(PRODUCTS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE name LIKE ?",
+                Integer.class, NAME_PREFIX + "%"));
+        assertTrue(batchedNanos < singleNanos);
+    }
+
+    /**
+     * Nanoseconds to persist count products, with the session's JDBC batch size set to batchSize
+     */
+    private long insertProducts(int batchSize, int count) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        for (int first = 0; first < count; first += CHUNK) {
+            int from = first;
+            transaction.executeWithoutResult(status -> {
+                EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+                entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+                for (int i = from; i < Math.min(from + CHUNK, count); i++) {
+                    entityManager.persist(new Product(NAME_PREFIX + i, "Inserted by the batching benchmark",
+                            BigDecimal.valueOf(10 + i % 500), 25));
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+            });
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return PRODUCTS / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,111 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Heap allocated while paging through a 10k-product catalog as entities and as card views.
+ * Run with: mvn test -Dtest=ProductCardViewBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ProductCardViewBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCardViewBenchmarkTest.class);
+
+    private static final int PRODUCTS = 10_000;
+    private static final int PAGE_SIZE = 100;
+    private static final String NAME_PREFIX = "Benchmark product ";
+    private static final long FIRST_ID = CatalogFixtures.FIRST_ID;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+
+    @BeforeEach
+    public void insertProducts() {
+        fixtures = new CatalogFixtures(context);
+        String description = "A sturdy, well reviewed product. ".repeat(16);
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = CatalogFixtures.product(FIRST_ID + i, NAME_PREFIX + i, BigDecimal.valueOf(10 + i % 500), 25);
+            product.setDescription(description);
+            product.setDimensions("30x20x10 cm");
+            product.setWeightKg(1.5);
+            products.add(product);
+        }
+        fixtures.insertProducts(products);
+    }
+
+    @AfterEach
+    public void deleteProducts() {
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testCardViewsAllocateLessThanEntities() {
+        // Warm up both paths so class loading and query plan caching are not measured
+        walkCatalog(productRepository::findSliceByActiveTrue);
+        walkCatalog(productRepository::findCardSliceByActiveTrue);
+
+        long entityBytes = walkCatalog(productRepository::findSliceByActiveTrue);
+        long cardBytes = walkCatalog(productRepository::findCardSliceByActiveTrue);
+
+        logger.info("Paging {} products by {}: entities {} bytes, card views {} bytes ({}%)",
+                PRODUCTS, PAGE_SIZE, entityBytes, cardBytes, String.format("%.1f", 100.0 * cardBytes / entityBytes));
+        assertTrue(cardBytes < entityBytes);
+    }
+
+    /**
+     * Bytes allocated by this thread while reading every page in a read-only transaction per page,
+     * the way the catalog controller does
+     */
+    private long walkCatalog(Function<Pageable, Slice<?>> query) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        Pageable pageable = PageRequest.of(0, PAGE_SIZE, Sort.by("name").and(Sort.by("id")));
+        boolean hasNext = true;
+        while (hasNext) {
+            Pageable current = pageable;
+            Slice<?> slice = readOnly.execute(status -> query.apply(current));
+            hasNext = slice.hasNext();
+            pageable = pageable.next();
+        }
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+}
@@ -0,0 +1,50 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.ProductDetailView;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ProductDetailCacheTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    public void clearCache() {
+        cacheManager.getCache(ProductService.PRODUCT_DETAILS_CACHE).clear();
+    }
+
+    @Test
+    public void testDetailsAreServedFromCacheUntilTheProductChanges() {
+        ProductDetailView first = productService.getProductDetail(1L).orElseThrow();
+        assertSame(first, productService.getProductDetail(1L).orElseThrow(), "Second view should be a cache hit");
+
+        int stock = first.stockQuantity();
+        try {
+            productService.updateStock(1L, stock + 5);
+            ProductDetailView reloaded = productService.getProductDetail(1L).orElseThrow();
+            assertNotSame(first, reloaded, "A write should evict the cached details");
+            assertEquals(stock + 5, reloaded.stockQuantity());
+        } finally {
+            productService.updateStock(1L, stock);
+        }
+    }
+
+    @Test
+    public void testMissingProductIsNotCached() {
+        assertTrue(productService.getProductDetail(-1L).isEmpty());
+        assertNull(cacheManager.getCache(ProductService.PRODUCT_DETAILS_CACHE).get(-1L));
+    }
+}
@@ -0,0 +1,86 @@
+package com.stefan.ecommerce;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ProductExportTest {
+
+    // Active products in data.sql
+    private static final int ACTIVE_PRODUCTS = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void testCsvExportStreamsRowsWithoutLoadingEntities() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<String> lines = export("csv");
+
+        assertEquals(0, statistics.getEntityLoadCount(), "Export rows must not be managed entities");
+        assertEquals("id,name,description,price,stock_quantity,image_url,categories", lines.get(0));
+        assertEquals(ACTIVE_PRODUCTS + 1, lines.size());
+        assertTrue(lines.contains("6,Running Shoes,Professional running shoes with cushioning,89.99,75,,Clothing|Sports"));
+    }
+
+    @Test
+    public void testJsonLinesExport() throws Exception {
+        List<String> lines = export("jsonl");
+
+        assertEquals(ACTIVE_PRODUCTS, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("Smartphone X", first.get("name").asText());
+        assertEquals("Electronics", first.get("categories").get(0).asText());
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected() throws Exception {
+        mockMvc.perform(get("/products/admin/export").param("format", "xlsx").with(user("admin").roles("ADMIN")))
+                .andExpect(status().isBadRequest());
+    }
+
+    private List<String> export(String format) throws Exception {
+        MvcResult started = mockMvc.perform(get("/products/admin/export").param("format", format)
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", containsString("." + format)))
+                .andReturn().getResponse().getContentAsString();
+        return Arrays.asList(body.split("\n"));
+    }
+}
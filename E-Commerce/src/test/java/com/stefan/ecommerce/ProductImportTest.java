@@ -0,0 +1,169 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.CatalogFileFormat;
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.ImportReport;
+import com.stefan.ecommerce.events.CatalogReloadedEvent;
+import com.stefan.ecommerce.services.CategoryProductCounts;
+import com.stefan.ecommerce.services.ProductImportService;
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ecommerce.import.batch-size=2", "ecommerce.import.chunk-size=4"})
+@ActiveProfiles("test")
+public class ProductImportTest {
+
+    private static final String PREFIX = "Imported ";
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CategoryProductCounts categoryProductCounts;
+
+    @AfterEach
+    public void deleteImportedProducts() {
+        jdbcTemplate.update("DELETE FROM product_categories WHERE product_id IN (SELECT id FROM products WHERE name LIKE ?)", PREFIX + "%");
+        jdbcTemplate.update("DELETE FROM products WHERE name LIKE ?", PREFIX + "%");
+        eventPublisher.publishEvent(new CatalogReloadedEvent(0));
+        categoryProductCounts.reconcile();
+    }
+
+    @Test
+    public void testCsvImportAcrossBatchesAndChunks() throws Exception {
+        long catalogSize = productService.findCatalogPage(CatalogFilter.NONE, PageRequest.of(0, 1)).products().getTotalElements();
+        int electronics = electronicsCount();
+        String csv = """
+                name,description,price,stock_quantity,image_url,categories
+                Imported lamp,"Warm light, dimmable",19.99,5,,Electronics|home & garden
+                Imported chair,"Oak chair
+                with a ""soft"" seat",89.00,2,/img/chair.png,Home & Garden
+                Imported mug,,7.5,100,,
+                Imported ghost,,3.00,1,,Haunted
+                ,,3.00,1,,
+                Imported kettle,,29.99,12,,Electronics
+                Imported toaster,,-1,12,,Electronics
+                Imported radio,,49.99,3,,Electronics
+                """;
+
+        ImportReport report = productImportService.importProducts(stream(csv), CatalogFileFormat.CSV);
+
+        assertEquals(5, report.imported());
+        assertEquals(3, report.rejected());
+        assertEquals(List.of("Line 6: Unknown category: Haunted", "Line 7: Product name cannot be empty",
+                "Line 9: Invalid price: -1"), report.errors());
+
+        Map<String, Object> chair = jdbcTemplate.queryForMap(
+                "SELECT description, price, image_url FROM products WHERE name = ?", "Imported chair");
+        assertEquals("Oak chair\nwith a \"soft\" seat", chair.get("DESCRIPTION"));
+        assertEquals(0, new BigDecimal("89.00").compareTo((BigDecimal) chair.get("PRICE")));
+        assertEquals(List.of(1L, 4L), jdbcTemplate.queryForList("SELECT pc.category_id FROM product_categories pc " +
+                "JOIN products p ON p.id = pc.product_id WHERE p.name = ? ORDER BY pc.category_id", Long.class, "Imported lamp"));
+
+        // Lamp, kettle and radio; the stored count was raised with the links
+        assertEquals(electronics + 3, electronicsCount());
+
+        // In-memory views were reloaded once for the whole import
+        assertEquals(catalogSize + 5, productService.findCatalogPage(CatalogFilter.NONE, PageRequest.of(0, 1)).products().getTotalElements());
+        assertFalse(productService.searchProducts("kettle").isEmpty());
+    }
+
+    @Test
+    public void testJsonLinesImport() throws Exception {
+        String jsonl = """
+                {"name": "Imported bottle", "price": 12.5, "stockQuantity": 40, "categories": ["Sports"]}
+                {"name": "Imported", "price": "oops", "stockQuantity": 1}
+                not json
+                """;
+
+        ImportReport report = productImportService.importProducts(stream(jsonl), CatalogFileFormat.JSONL);
+
+        assertEquals(1, report.imported());
+        assertEquals(2, report.rejected());
+        assertEquals(List.of(5L), jdbcTemplate.queryForList("SELECT pc.category_id FROM product_categories pc " +
+                "JOIN products p ON p.id = pc.product_id WHERE p.name = ?", Long.class, "Imported bottle"));
+    }
+
+    @Test
+    public void testOverlongImageUrlIsRejectedBeforeTheDatabase() throws Exception {
+        String jsonl = """
+                {"name": "Imported poster", "price": 9.99, "stockQuantity": 3, "imageUrl": "/img/%s.png"}
+                {"name": "Imported frame", "price": 14.99}
+                {"name": "Imported print", "price": 4.99, "stockQuantity": 8, "imageUrl": "/img/print.png"}
+                """.formatted("x".repeat(250));
+
+        ImportReport report = productImportService.importProducts(stream(jsonl), CatalogFileFormat.JSONL);
+
+        assertEquals(1, report.imported());
+        assertEquals(List.of("Line 1: Image URL cannot exceed 255 characters",
+                "Line 2: Price and stock quantity are required"), report.errors());
+    }
+
+    @Test
+    public void testChunkRefusedByTheDatabaseIsReportedAndTheRestImported() throws Exception {
+        // Stands in for any constraint the row checks cannot see, such as a unique index on another deployment
+        jdbcTemplate.execute("ALTER TABLE products ADD CONSTRAINT chk_import_test CHECK (name <> 'Imported bomb')");
+        try {
+            String csv = """
+                    name,price,stock_quantity
+                    Imported pen,1.50,10
+                    Imported bomb,2.00,1
+                    Imported pad,3.00,10
+                    Imported ink,4.00,10
+                    Imported clip,0.50,10
+                    Imported tape,2.50,10
+                    """;
+
+            ImportReport report = productImportService.importProducts(stream(csv), CatalogFileFormat.CSV);
+
+            // The chunk stopped at the refused batch of two rows and rolled back; the next chunk starts after it
+            assertEquals(4, report.imported());
+            assertEquals(2, report.rejected());
+            assertEquals(1, report.errors().size());
+            assertTrue(report.errors().get(0).startsWith("Lines 2-3: 2 rows not imported: "), report.errors().get(0));
+            assertEquals(List.of("Imported pad", "Imported ink", "Imported clip", "Imported tape"), jdbcTemplate.queryForList(
+                    "SELECT name FROM products WHERE name LIKE ? ORDER BY id", String.class, PREFIX + "%"));
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE products DROP CONSTRAINT chk_import_test");
+        }
+    }
+
+    @Test
+    public void testCsvWithoutRequiredColumnsIsRefused() {
+        assertThrows(IllegalArgumentException.class,
+                () -> productImportService.importProducts(stream("title,cost\nImported lamp,19.99\n"), CatalogFileFormat.CSV));
+        assertThrows(IllegalArgumentException.class, () -> CatalogFileFormat.fromFilename("catalog.xlsx"));
+    }
+
+    private int electronicsCount() {
+        return jdbcTemplate.queryForObject("SELECT active_product_count FROM categories WHERE id = 1", Integer.class);
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
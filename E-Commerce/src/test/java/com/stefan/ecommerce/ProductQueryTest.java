@@ -0,0 +1,112 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.PriceRange;
+import com.stefan.ecommerce.dto.ProductCardView;
+import com.stefan.ecommerce.dto.ProductQuery;
+import com.stefan.ecommerce.services.ProductService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Combined catalog criteria run as one criteria query over the sample data in data.sql
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ProductQueryTest {
+
+    private static final long ELECTRONICS = 1;
+    private static final long CLOTHING = 2;
+    private static final long SPORTS = 5;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testPriceRangeWithinCategory() {
+        ProductQuery query = new ProductQuery(null, new CatalogFilter(Set.of(ELECTRONICS), null, false),
+                new BigDecimal("100"), new BigDecimal("699.99"));
+
+        Page<ProductCardView> page = productService.findProducts(query, PageRequest.of(0, 12, Sort.by("price")));
+
+        assertEquals(List.of("Wireless Headphones", "Smartphone X"), names(page));
+        // Card columns only, in a single statement: the page is not full, so no COUNT is needed
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testSearchTermWithFacetsAndSort() {
+        // Terms match name or description, ignoring case; LIKE wildcards typed by the user are literal
+        CatalogFilter clothingOrSports = new CatalogFilter(Set.of(CLOTHING, SPORTS), PriceRange.FROM_50_TO_100, true);
+
+        assertEquals(List.of("Running Shoes"),
+                names(productService.findProducts(new ProductQuery("SHOES", clothingOrSports, null, null), PageRequest.of(0, 12))));
+        assertEquals(List.of("Coffee Maker", "Yoga Mat"),
+                names(productService.findProducts(new ProductQuery("home", CatalogFilter.NONE, null, null),
+                        PageRequest.of(0, 12, Sort.by("name")))));
+        assertTrue(productService.findProducts(new ProductQuery("100%", CatalogFilter.NONE, null, null), PageRequest.of(0, 12)).isEmpty());
+    }
+
+    @Test
+    public void testProductInSeveralSelectedCategoriesIsListedOnce() {
+        ProductQuery query = ProductQuery.of(new CatalogFilter(Set.of(CLOTHING, SPORTS), null, false));
+
+        Page<ProductCardView> firstPage = productService.findProducts(query, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "price")));
+
+        assertEquals(4, firstPage.getTotalElements());
+        assertEquals(List.of("Running Shoes", "Jeans Slim Fit"), names(firstPage));
+        assertEquals(List.of("Yoga Mat", "T-Shirt Classic"),
+                names(productService.findProducts(query, firstPage.nextPageable())));
+    }
+
+    @Test
+    public void testCatalogPageCombinesSearchWithFilters() throws Exception {
+        mockMvc.perform(get("/products").param("q", "professional").param("category", String.valueOf(ELECTRONICS))
+                        .param("minPrice", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Laptop Pro")))
+                .andExpect(content().string(not(containsString("Running Shoes"))));
+    }
+
+    private static List<String> names(Page<ProductCardView> page) {
+        return page.getContent().stream().map(ProductCardView::name).toList();
+    }
+}
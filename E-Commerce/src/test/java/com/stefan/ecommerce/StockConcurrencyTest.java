@@ -0,0 +1,151 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hundreds of buyers decrementing the same products at once
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class StockConcurrencyTest {
+
+    private static final long FIRST_ID = CatalogFixtures.FIRST_ID;
+    private static final long SECOND_ID = FIRST_ID + 1;
+    private static final int STOCK = 150;
+    private static final int BUYERS_PER_PRODUCT = 400;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+
+    @BeforeEach
+    public void insertProducts() {
+        fixtures = new CatalogFixtures(context);
+        fixtures.insertProducts(List.of(
+                CatalogFixtures.product(FIRST_ID, "Limited edition " + FIRST_ID, BigDecimal.TEN, STOCK),
+                CatalogFixtures.product(SECOND_ID, "Limited edition " + SECOND_ID, BigDecimal.TEN, STOCK)));
+    }
+
+    @AfterEach
+    public void deleteProducts() {
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testParallelDecrementsNeverOversell() throws Exception {
+        List<Callable<Boolean>> buyers = new ArrayList<>();
+        for (int i = 0; i < BUYERS_PER_PRODUCT; i++) {
+            buyers.add(() -> buy(FIRST_ID, 1));
+            buyers.add(() -> buy(SECOND_ID, 1));
+        }
+
+        List<Boolean> results = runTogether(buyers);
+
+        assertEquals(2 * STOCK, results.stream().filter(Boolean::booleanValue).count());
+        assertEquals(0, stock(FIRST_ID));
+        assertEquals(0, stock(SECOND_ID));
+    }
+
+    @Test
+    public void testRestockingRacesWithBuyers() throws Exception {
+        int restocks = 100;
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < BUYERS_PER_PRODUCT; i++) {
+            tasks.add(() -> buy(FIRST_ID, 2));
+            if (i % 4 == 0) {
+                tasks.add(() -> {
+                    productService.increaseStock(FIRST_ID, 1);
+                    return false;
+                });
+            }
+        }
+
+        long sold = runTogether(tasks).stream().filter(Boolean::booleanValue).count();
+
+        // Every unit is accounted for and the stock never goes below zero
+        int left = stock(FIRST_ID);
+        assertEquals(STOCK + restocks - 2 * sold, left);
+        assertTrue(left >= 0, "left: " + left);
+    }
+
+    @Test
+    public void testRejectedDecrementsExplainWhy() {
+        IllegalArgumentException shortage = assertThrows(IllegalArgumentException.class,
+                () -> productService.decreaseStock(FIRST_ID, STOCK + 1));
+        assertEquals("Insufficient stock. Available: " + STOCK + ", Requested: " + (STOCK + 1), shortage.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> productService.decreaseStock(FIRST_ID - 1_000, 1));
+        assertThrows(IllegalArgumentException.class, () -> productService.decreaseStock(FIRST_ID, -5));
+        assertThrows(IllegalArgumentException.class, () -> productService.increaseStock(FIRST_ID, 0));
+
+        assertEquals(STOCK - 3, productService.decreaseStock(FIRST_ID, 3).getStockQuantity());
+        assertEquals(STOCK, productService.increaseStock(FIRST_ID, 3).getStockQuantity());
+    }
+
+    private boolean buy(long productId, int quantity) {
+        try {
+            productService.decreaseStock(productId, quantity);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Release every task at the same moment so they all contend for the same rows
+    private static List<Boolean> runTogether(List<Callable<Boolean>> tasks) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (Callable<Boolean> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<Boolean> results = new ArrayList<>();
+            for (Future<Boolean> future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } catch (TimeoutException e) {
+            throw new AssertionError("Stock updates did not finish", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int stock(long productId) {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM products WHERE id = ?", Integer.class, productId);
+    }
+}
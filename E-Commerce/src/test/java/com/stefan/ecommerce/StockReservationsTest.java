@@ -0,0 +1,188 @@
+package com.stefan.ecommerce;
+
+import com.stefan.ecommerce.entities.Order;
+import com.stefan.ecommerce.repositories.OrderRepository;
+import com.stefan.ecommerce.repositories.UserRepository;
+import com.stefan.ecommerce.services.OrderService;
+import com.stefan.ecommerce.services.StockReservations;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * Stock held for pending orders, converted on confirmation and released when abandoned
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class StockReservationsTest {
+
+    private static final long CONSOLE = CatalogFixtures.FIRST_ID;
+    private static final long CONTROLLER = CONSOLE + 1;
+    private static final int STOCK = 10;
+    // Past the default 15 minute TTL
+    private static final Duration LATER = Duration.ofMinutes(20);
+
+    // The expiry timer never moves back, so each test that expires holds moves it past the last one
+    private static Instant expiredUpTo = Instant.EPOCH;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockReservations stockReservations;
+
+    // Real, except where a test makes a release fail
+    @MockitoSpyBean
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private CatalogFixtures fixtures;
+    private Long orderId;
+
+    @BeforeEach
+    public void setUp() {
+        fixtures = new CatalogFixtures(context);
+        fixtures.insertProducts(List.of(
+                CatalogFixtures.product(CONSOLE, "Reserved " + CONSOLE, BigDecimal.TEN, STOCK),
+                CatalogFixtures.product(CONTROLLER, "Reserved " + CONTROLLER, BigDecimal.TEN, STOCK)));
+        orderId = orderService.createOrder(userRepository.findById(2L).orElseThrow(), BigDecimal.TEN).getId();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        orderService.deleteOrder(orderId);
+        fixtures.deleteAll();
+    }
+
+    @Test
+    public void testConfirmationConvertsTheHold() {
+        int openHolds = stockReservations.openHolds();
+
+        orderService.addOrderItem(orderId, CONSOLE, 3);
+        orderService.addOrderItem(orderId, CONTROLLER, 2);
+        assertEquals(STOCK - 3, stock(CONSOLE));
+        assertEquals(STOCK - 2, stock(CONTROLLER));
+        assertNotNull(order().getReservedUntil());
+        assertEquals(openHolds + 1, stockReservations.openHolds());
+
+        orderService.confirmOrder(orderId);
+
+        assertEquals(Order.OrderStatus.CONFIRMED, order().getStatus());
+        assertNull(order().getReservedUntil());
+        assertEquals(STOCK - 3, stock(CONSOLE));
+        assertEquals(openHolds, stockReservations.openHolds());
+    }
+
+    @Test
+    public void testTimersFollowOnlyCommittedHolds() {
+        int openHolds = stockReservations.openHolds();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            orderService.addOrderItem(orderId, CONSOLE, 3);
+            status.setRollbackOnly();
+        });
+        assertEquals(openHolds, stockReservations.openHolds());
+
+        orderService.addOrderItem(orderId, CONSOLE, 4);
+        transaction.executeWithoutResult(status -> {
+            orderService.confirmOrder(orderId);
+            status.setRollbackOnly();
+        });
+        // Still pending and holding its units, so its timer has to be there to release them
+        assertEquals(openHolds + 1, stockReservations.openHolds());
+        assertEquals(1, stockReservations.expire(pastTheTtl()));
+        assertEquals(STOCK, stock(CONSOLE));
+    }
+
+    @Test
+    public void testAbandonedHoldsAreReleased() {
+        orderService.addOrderItem(orderId, CONSOLE, 4);
+        assertEquals(0, stockReservations.expire(Instant.now()));
+
+        assertEquals(1, stockReservations.expire(pastTheTtl()));
+        assertEquals(STOCK, stock(CONSOLE));
+        assertNull(order().getReservedUntil());
+
+        // A late confirmation takes the stock again
+        orderService.confirmOrder(orderId);
+        assertEquals(STOCK - 4, stock(CONSOLE));
+        assertEquals(Order.OrderStatus.CONFIRMED, order().getStatus());
+    }
+
+    @Test
+    public void testFailedReleaseIsRetried() {
+        orderService.addOrderItem(orderId, CONSOLE, 4);
+        Instant later = pastTheTtl();
+        doThrow(new CannotAcquireLockException("Lock wait timed out")).when(orderRepository).findLockedById(orderId);
+
+        assertEquals(0, stockReservations.expire(later));
+        assertEquals(STOCK - 4, stock(CONSOLE));
+        assertNotNull(order().getReservedUntil());
+
+        reset(orderRepository);
+        // Retried a tick later; the wheel hands it out once that tick has passed
+        assertEquals(1, stockReservations.expire(later.plusSeconds(2)));
+        assertEquals(STOCK, stock(CONSOLE));
+        assertNull(order().getReservedUntil());
+    }
+
+    @Test
+    public void testHoldsNeverOversell() {
+        orderService.addOrderItem(orderId, CONSOLE, STOCK - 1);
+        assertThrows(IllegalArgumentException.class, () -> orderService.addOrderItem(orderId, CONSOLE, 2));
+        assertEquals(1, stock(CONSOLE));
+        assertEquals(1, itemCount());
+
+        orderService.cancelOrder(orderId);
+        assertEquals(STOCK, stock(CONSOLE));
+        assertEquals(Order.OrderStatus.CANCELLED, order().getStatus());
+    }
+
+    private static Instant pastTheTtl() {
+        Instant later = Instant.now().plus(LATER);
+        expiredUpTo = later.isAfter(expiredUpTo.plus(LATER)) ? later : expiredUpTo.plus(LATER);
+        return expiredUpTo;
+    }
+
+    private Order order() {
+        return orderRepository.findById(orderId).orElseThrow();
+    }
+
+    private int itemCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_items WHERE order_id = ?", Integer.class, orderId);
+    }
+
+    private int stock(long productId) {
+        return jdbcTemplate.queryForObject("SELECT stock_quantity FROM products WHERE id = ?", Integer.class, productId);
+    }
+}
@@ -0,0 +1,139 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.CatalogFilter;
+import com.stefan.ecommerce.dto.FacetCounts;
+import com.stefan.ecommerce.dto.PriceRange;
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class ProductFacetIndexTest {
+
+    private static final Long ELECTRONICS = 1L;
+    private static final Long SPORTS = 2L;
+
+    private ProductRepository productRepository;
+    private ProductFacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductFacetIndex(productRepository);
+        index.index(product(1L, "Headphones", "79.99", 10, ELECTRONICS));
+        index.index(product(2L, "Smartphone", "699.99", 0, ELECTRONICS));
+        index.index(product(3L, "Yoga Mat", "59.99", 5, SPORTS));
+        index.index(product(4L, "Running Shoes", "120.00", 3, SPORTS));
+    }
+
+    @Test
+    void testFiltersAreIntersected() {
+        CatalogFilter filter = new CatalogFilter(Set.of(ELECTRONICS), PriceRange.FROM_50_TO_100, true);
+        ProductFacetIndex.Result result = index.search(filter, Sort.by("name"));
+
+        assertEquals(List.of(1L), result.productIds());
+        assertEquals(1, result.counts().matching());
+    }
+
+    @Test
+    void testEachFacetIsCountedAgainstTheOtherSelections() {
+        CatalogFilter filter = new CatalogFilter(Set.of(ELECTRONICS), PriceRange.FROM_50_TO_100, false);
+        FacetCounts counts = index.counts(filter);
+
+        assertEquals(1, counts.category(ELECTRONICS));
+        assertEquals(1, counts.category(SPORTS));
+        assertEquals(1, counts.priceRange(PriceRange.FROM_50_TO_100));
+        assertEquals(1, counts.priceRange(PriceRange.OVER_500));
+        assertEquals(0, counts.priceRange(PriceRange.FROM_100_TO_250));
+        assertEquals(1, counts.inStock());
+    }
+
+    @Test
+    void testSelectedCategoriesAreAlternatives() {
+        CatalogFilter filter = new CatalogFilter(Set.of(ELECTRONICS, SPORTS), null, true);
+        ProductFacetIndex.Result result = index.search(filter, Sort.by(Sort.Direction.DESC, "price"));
+
+        assertEquals(List.of(4L, 1L, 3L), result.productIds());
+    }
+
+    @Test
+    void testChangesUpdateTheBitsets() {
+        index.index(product(2L, "Smartphone", "699.99", 8, ELECTRONICS));
+        index.index(product(3L, "Yoga Mat", "59.99", 5, ELECTRONICS));
+        index.remove(4L);
+
+        FacetCounts counts = index.counts(CatalogFilter.NONE);
+        assertEquals(3, counts.category(ELECTRONICS));
+        assertEquals(0, counts.category(SPORTS));
+        assertEquals(3, counts.inStock());
+
+        index.index(product(5L, "Tennis Racket", "150.00", 2, SPORTS));
+        assertEquals(List.of(5L), index.search(new CatalogFilter(Set.of(SPORTS), null, false), Sort.by("name")).productIds());
+        assertEquals(4, index.size());
+        assertEquals(3, index.categorySize(ELECTRONICS));
+        assertEquals(1, index.categorySize(SPORTS));
+
+        index.index(product(5L, "Tennis Racket", "150.00", 2, ELECTRONICS));
+        assertEquals(4, index.categorySize(ELECTRONICS));
+        assertEquals(0, index.categorySize(SPORTS));
+    }
+
+    @Test
+    void testChangeAppliedDuringRebuildSurvivesTheSwap() {
+        Product stale = entity(2L, "Smartphone", "699.99", 0, ELECTRONICS);
+        when(productRepository.findAllWithCategories()).thenAnswer(invocation -> {
+            // Committed after the rows were read; its event arrives before the rebuild swaps them in
+            index.index(product(2L, "Smartphone", "699.99", 8, ELECTRONICS));
+            return List.of(stale);
+        });
+
+        index.rebuild();
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.counts(CatalogFilter.NONE).inStock());
+    }
+
+    @Test
+    void testCategoryChangeReindexesOnlyItsProducts() {
+        // Category SPORTS was deleted: its products keep existing without the link
+        when(productRepository.findAllWithCategoriesByIdIn(anyCollection())).thenReturn(List.of(
+                entity(3L, "Yoga Mat", "59.99", 5, null),
+                entity(4L, "Running Shoes", "120.00", 3, null)));
+
+        index.onCategoryChanged(new CategoryChangedEvent(SPORTS));
+
+        verify(productRepository).findAllWithCategoriesByIdIn(List.of(3L, 4L));
+        verify(productRepository, never()).findAllWithCategories();
+        assertEquals(0, index.categorySize(SPORTS));
+        assertEquals(2, index.categorySize(ELECTRONICS));
+        assertEquals(4, index.size());
+    }
+
+    private static Product entity(Long id, String name, String price, int stock, Long categoryId) {
+        Product product = new Product(name, null, new BigDecimal(price), stock);
+        product.setId(id);
+        if (categoryId != null) {
+            Category linked = new Category("Category " + categoryId, null);
+            linked.setId(categoryId);
+            product.addCategory(linked);
+        }
+        return product;
+    }
+
+    private static ProductSnapshot product(Long id, String name, String price, int stock, Long categoryId) {
+        return new ProductSnapshot(id, name, null, new BigDecimal(price), stock, null, true,
+                null, null, Set.of(categoryId), List.of());
+    }
+}
@@ -0,0 +1,111 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class ProductSearchIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductSearchIndex(productRepository);
+        index.index(product(1L, "Wireless Headphones", "Noise cancelling", true, "Electronics"));
+        index.index(product(2L, "Smartphone X", "Pairs with wireless headphones", true, "Electronics"));
+        index.index(product(3L, "Yoga Mat", "Premium mat for home workouts", true, "Sports"));
+    }
+
+    @Test
+    void testPrefixMatchRanksNameAboveDescription() {
+        assertEquals(List.of(1L, 2L), index.search("headph"));
+    }
+
+    @Test
+    void testAllTermsMustMatch() {
+        assertEquals(List.of(2L), index.search("smartphone wireless"));
+        assertTrue(index.search("yoga headphones").isEmpty());
+    }
+
+    @Test
+    void testCategoryNamesAndAccentsAreSearchable() {
+        assertEquals(List.of(3L), index.search("spórts"));
+    }
+
+    @Test
+    void testUpdateRetractsOldTerms() {
+        index.index(product(3L, "Garden Tool Set", "Essential tools", true, "Home & Garden"));
+        assertTrue(index.search("yoga").isEmpty());
+        assertEquals(List.of(3L), index.search("garden"));
+    }
+
+    @Test
+    void testInactiveProductsAreRemoved() {
+        index.index(product(1L, "Wireless Headphones", "Noise cancelling", false, "Electronics"));
+        assertEquals(List.of(2L), index.search("headphones"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testBlankQueryMatchesEverything() {
+        assertEquals(List.of(1L, 2L, 3L), index.search("  "));
+        assertTrue(index.search(null).isEmpty());
+    }
+
+    @Test
+    void testChangeAppliedDuringRebuildSurvivesTheSwap() {
+        Product stale = entity(1L, "Wireless Headphones", "Electronics");
+        when(productRepository.findAllWithCategories()).thenAnswer(invocation -> {
+            // Committed after the rows were read; its event arrives before the rebuild swaps them in
+            index.index(product(1L, "Wired Earbuds", "Noise cancelling", true, "Electronics"));
+            return List.of(stale);
+        });
+
+        index.rebuild();
+
+        assertTrue(index.search("headphones").isEmpty());
+        assertEquals(List.of(1L), index.search("earbuds"));
+    }
+
+    @Test
+    void testCategoryChangeReindexesOnlyItsProducts() {
+        when(productRepository.findAllWithCategoriesByIdIn(anyCollection()))
+                .thenReturn(List.of(entity(3L, "Yoga Mat", "Fitness")));
+
+        index.onCategoryChanged(new CategoryChangedEvent(3L));
+
+        verify(productRepository).findAllWithCategoriesByIdIn(Set.of(3L));
+        verify(productRepository, never()).findAllWithCategories();
+        assertTrue(index.search("sports").isEmpty());
+        assertEquals(List.of(3L), index.search("fitness"));
+        assertEquals(3, index.size());
+    }
+
+    private static Product entity(Long id, String name, String category) {
+        Category linked = new Category(category, null);
+        linked.setId(id);
+        Product product = new Product(name, null, BigDecimal.TEN, 10);
+        product.setId(id);
+        product.addCategory(linked);
+        return product;
+    }
+
+    private static ProductSnapshot product(Long id, String name, String description, boolean active, String category) {
+        return new ProductSnapshot(id, name, description, BigDecimal.TEN, 10, null, active,
+                null, null, Set.of(id), List.of(category));
+    }
+}
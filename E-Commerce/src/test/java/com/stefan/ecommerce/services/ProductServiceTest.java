@@ -1,5 +1,6 @@
 package com.stefan.ecommerce.services;
 
+import com.stefan.ecommerce.dto.CursorPage;
 import com.stefan.ecommerce.entities.Product;
 import com.stefan.ecommerce.repositories.ProductRepository;
 import com.stefan.ecommerce.repositories.CategoryRepository;
@@ -10,6 +11,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -22,6 +24,8 @@ class ProductServiceTest {
     private ProductRepository productRepository;
     @Mock
     private CategoryRepository categoryRepository;
+    @Mock
+    private ProductSearchIndex productSearchIndex;
     @InjectMocks
     private ProductService productService;
 
@@ -56,4 +60,40 @@ class ProductServiceTest {
         Product saved = productRepository.save(p);
         assertNotNull(saved);
     }
+
+    @Test
+    void testSearchCursorResumesAfterLastProductShown() {
+        when(productSearchIndex.search("phone")).thenReturn(List.of(3L, 1L, 2L));
+        when(productRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Product> found = new ArrayList<>();
+            for (Object id : (Iterable<?>) invocation.getArgument(0)) {
+                Product product = new Product("P" + id, "desc", BigDecimal.TEN, 1);
+                product.setId((Long) id);
+                found.add(product);
+            }
+            return found;
+        });
+
+        CursorPage<Product> first = productService.searchProducts("phone", "", 2, false);
+        assertEquals(List.of(3L, 1L), first.content().stream().map(Product::getId).toList());
+        assertTrue(first.hasNext());
+
+        // A product ranked ahead of the cursor since the first page must not shift the second one
+        when(productSearchIndex.search("phone")).thenReturn(List.of(4L, 3L, 1L, 2L));
+        CursorPage<Product> second = productService.searchProducts("phone", first.nextCursor(), 2, false);
+        assertEquals(List.of(2L), second.content().stream().map(Product::getId).toList());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    void testPrefixTsQueryEscapesOperators() {
+        assertEquals("wireless:* & head:*", ProductService.toPrefixTsQuery("Wireless & head!"));
+        assertEquals("", ProductService.toPrefixTsQuery("  |  "));
+    }
+
+    @Test
+    void testPrefixTsQueryFoldsAccentsLikeTheDocument() {
+        // product_search_document unaccents names, categories and descriptions the same way
+        assertEquals("cafe:* & creme:*", ProductService.toPrefixTsQuery("Café Crème"));
+    }
 } 
\ No newline at end of file
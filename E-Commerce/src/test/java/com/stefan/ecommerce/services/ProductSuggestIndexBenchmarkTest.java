@@ -0,0 +1,87 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Build time and retained heap of the suggest trie over a 200k-product catalog.
+ * Run with: mvn test -Dtest=ProductSuggestIndexBenchmarkTest -Dbenchmark=true [-Dbenchmark.products=N]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductSuggestIndexBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestIndexBenchmarkTest.class);
+
+    private static final int PRODUCTS = Integer.getInteger("benchmark.products", 200_000);
+    private static final int WORDS = 5_000;
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "ro", "su", "ta", "vi", "ze", "dor", "lin", "mar",
+            "pex", "qua", "bri", "sto", "gal", "fen", "hum", "jot"};
+
+    @Test
+    void testRebuildOfALargeCatalog() {
+        List<Product> products = products();
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findByActiveTrue()).thenReturn(products);
+        ProductSuggestIndex index = new ProductSuggestIndex(productRepository, mock(CategoryRepository.class));
+
+        long before = usedHeap();
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long started = System.nanoTime();
+            index.rebuild();
+            best = Math.min(best, System.nanoTime() - started);
+        }
+        long retained = usedHeap() - before;
+
+        logger.info("Suggest index over {} products: rebuilt in {} ms, {} MB retained",
+                PRODUCTS, best / 1_000_000, retained / (1024 * 1024));
+        assertFalse(index.suggest(products.get(0).getName().substring(0, 3), 10).isEmpty());
+    }
+
+    // Four to six words from a five thousand word vocabulary and a model number, like supplier catalog names
+    private static List<Product> products() {
+        Random random = new Random(42);
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 0; s < 2 + random.nextInt(3); s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            words[i] = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+        }
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int w = 0; w < 4 + random.nextInt(3); w++) {
+                name.append(words[random.nextInt(WORDS)]).append(' ');
+            }
+            name.append('M').append(random.nextInt(10_000));
+            Product product = new Product(name.toString(), null, BigDecimal.TEN, 1);
+            product.setId((long) i + 1);
+            products.add(product);
+        }
+        return products;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
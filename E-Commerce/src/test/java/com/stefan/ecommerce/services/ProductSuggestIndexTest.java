@@ -0,0 +1,92 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.dto.Suggestion;
+import com.stefan.ecommerce.entities.Category;
+import com.stefan.ecommerce.events.CategoryChangedEvent;
+import com.stefan.ecommerce.events.ProductChangedEvent;
+import com.stefan.ecommerce.repositories.CategoryRepository;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductSuggestIndexTest {
+
+    private ProductSuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        Category electronics = new Category("Electronics", "Devices");
+        electronics.setId(10L);
+        when(categoryRepository.findByActiveTrue()).thenReturn(List.of(electronics));
+
+        index = new ProductSuggestIndex(mock(ProductRepository.class), categoryRepository);
+        index.onCategoryChanged(new CategoryChangedEvent(10L));
+        index.onProductChanged(ProductChangedEvent.of(product(1L, "Wireless Headphones", true)));
+        index.onProductChanged(ProductChangedEvent.of(product(2L, "Headphone Stand", true)));
+        index.onProductChanged(ProductChangedEvent.of(product(3L, "Électric Kettle", true)));
+        index.publishIfStale();
+    }
+
+    @Test
+    void testNamesStartingWithQueryRankFirst() {
+        assertEquals(List.of(Suggestion.product(2L, "Headphone Stand"), Suggestion.product(1L, "Wireless Headphones")),
+                index.suggest("head", 10));
+        assertEquals(List.of(Suggestion.product(2L, "Headphone Stand")), index.suggest("head", 1));
+    }
+
+    @Test
+    void testCategoriesAndAccentsAreCompleted() {
+        assertEquals(List.of(Suggestion.category(10L, "Electronics"), Suggestion.product(3L, "Électric Kettle")),
+                index.suggest("elec", 10));
+    }
+
+    @Test
+    void testMultiWordPrefixes() {
+        assertEquals(List.of(Suggestion.product(1L, "Wireless Headphones")), index.suggest("wireless he", 10));
+        assertTrue(index.suggest("wireless st", 10).isEmpty());
+        assertTrue(index.suggest(" ", 10).isEmpty());
+    }
+
+    @Test
+    void testChangesSwapInNewCompletions() {
+        index.onProductChanged(ProductChangedEvent.of(product(2L, "Headphone Stand", false)));
+        index.onProductChanged(ProductChangedEvent.removed(1L));
+        // Served from the previous trie until the next build
+        assertEquals(2, index.suggest("head", 10).size());
+        index.publishIfStale();
+        assertTrue(index.suggest("head", 10).isEmpty());
+
+        index.onProductChanged(ProductChangedEvent.of(product(4L, "Headset", true)));
+        index.publishIfStale();
+        assertEquals(List.of(Suggestion.product(4L, "Headset")), index.suggest("HEAD", 10));
+    }
+
+    @Test
+    void testSharedPrefixesSplitMergedEdges() {
+        index.onProductChanged(ProductChangedEvent.of(product(5L, "Headphone Standard", true)));
+        index.onProductChanged(ProductChangedEvent.of(product(6L, "Headlamp", true)));
+        index.publishIfStale();
+
+        assertEquals(List.of(Suggestion.product(2L, "Headphone Stand"), Suggestion.product(5L, "Headphone Standard")),
+                index.suggest("headphone sta", 10));
+        assertEquals(List.of(Suggestion.product(5L, "Headphone Standard")), index.suggest("headphone standa", 10));
+        assertEquals(List.of(Suggestion.product(6L, "Headlamp")), index.suggest("headl", 10));
+        assertTrue(index.suggest("headphone standards", 10).isEmpty());
+        assertTrue(index.suggest("heax", 10).isEmpty());
+    }
+
+    private static ProductSnapshot product(Long id, String name, boolean active) {
+        return new ProductSnapshot(id, name, null, BigDecimal.TEN, 10, null, active,
+                null, null, Set.of(), List.of());
+    }
+}
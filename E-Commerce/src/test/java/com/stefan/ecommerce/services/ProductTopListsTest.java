@@ -0,0 +1,137 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.entities.Product;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static com.stefan.ecommerce.services.ProductTopLists.Ranking.CHEAPEST;
+import static com.stefan.ecommerce.services.ProductTopLists.Ranking.MOST_EXPENSIVE;
+import static com.stefan.ecommerce.services.ProductTopLists.Ranking.NEWEST;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductTopListsTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private ProductRepository productRepository;
+    private ProductTopLists topLists;
+    // What the database holds, served by the mocked ranking queries
+    private final List<Product> catalog = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.findFeaturedProducts(any())).thenAnswer(invocation ->
+                firstPage(Comparator.comparing(Product::getCreatedAt).reversed(), invocation.getArgument(0)));
+        when(productRepository.findCheapestProducts(any())).thenAnswer(invocation ->
+                firstPage(Comparator.comparing(Product::getPrice), invocation.getArgument(0)));
+        when(productRepository.findMostExpensiveProducts(any())).thenAnswer(invocation ->
+                firstPage(Comparator.comparing(Product::getPrice).reversed(), invocation.getArgument(0)));
+        topLists = new ProductTopLists(productRepository, mock(PlatformTransactionManager.class));
+        topLists.index(product(1L, "79.99", 3, true));
+        topLists.index(product(2L, "699.99", 1, true));
+        topLists.index(product(3L, "59.99", 2, true));
+    }
+
+    @Test
+    void testListsAreOrderedAndLimited() {
+        assertEquals(List.of(2L, 3L, 1L), ids(topLists.top(NEWEST, 10)));
+        assertEquals(List.of(3L, 1L), ids(topLists.top(CHEAPEST, 2)));
+        assertEquals(List.of(2L, 1L, 3L), ids(topLists.top(MOST_EXPENSIVE, 10)));
+        assertTrue(topLists.top(CHEAPEST, 0).isEmpty());
+    }
+
+    @Test
+    void testPriceChangesAndDeactivationAreApplied() {
+        topLists.index(product(2L, "9.99", 1, true));
+        assertEquals(List.of(2L, 3L, 1L), ids(topLists.top(CHEAPEST, 10)));
+
+        topLists.index(product(3L, "59.99", 2, false));
+        topLists.remove(1L);
+        assertEquals(List.of(2L), ids(topLists.top(NEWEST, 10)));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void testOnlyListsLeftTooShortReloadTheirFirstProducts() {
+        LongStream.rangeClosed(1, ProductTopLists.CAPACITY + 20).forEach(id -> catalog.add(entity(id)));
+        topLists.rebuild();
+        verify(productRepository).findCheapestProducts(PageRequest.of(0, ProductTopLists.CAPACITY, Sort.by("id")));
+
+        // A product cheaper than every member joins; one ranking past the cut is known to be missing
+        topLists.index(product(1000L, "0.50", 1, true));
+        assertEquals(1000L, topLists.top(CHEAPEST, 1).get(0).id());
+
+        // The cheapest and the newest lists lose the same products; the most expensive one keeps enough
+        for (long id = 1; id <= ProductTopLists.CAPACITY - ProductTopLists.MAX_LIMIT; id++) {
+            delete(id);
+        }
+        verify(productRepository, times(1)).findCheapestProducts(any());
+
+        delete(ProductTopLists.CAPACITY - ProductTopLists.MAX_LIMIT + 1L);
+        verify(productRepository, times(2)).findCheapestProducts(any());
+        verify(productRepository, times(2)).findFeaturedProducts(any());
+        verify(productRepository, times(1)).findMostExpensiveProducts(any());
+        verify(productRepository, never()).findAllWithCategories();
+        assertEquals(ProductTopLists.MAX_LIMIT, topLists.top(CHEAPEST, 100).size());
+        assertEquals(ProductTopLists.CAPACITY - ProductTopLists.MAX_LIMIT + 2L, topLists.top(CHEAPEST, 1).get(0).id());
+    }
+
+    @Test
+    void testChangeAppliedDuringReloadSurvivesTheSwap() {
+        catalog.add(entity(1));
+        catalog.add(entity(2));
+        doAnswer(invocation -> {
+            // Committed after the rows were read; its event arrives before the reload swaps them in
+            topLists.index(product(2L, "0.50", 2, true));
+            return firstPage(Comparator.comparing(Product::getPrice), invocation.getArgument(0));
+        }).when(productRepository).findCheapestProducts(any());
+
+        topLists.rebuild();
+
+        assertEquals(List.of(2L, 1L), ids(topLists.top(CHEAPEST, 10)));
+        assertEquals(new BigDecimal("0.50"), topLists.top(CHEAPEST, 1).get(0).price());
+    }
+
+    private void delete(long id) {
+        catalog.removeIf(product -> product.getId() == id);
+        topLists.remove(id);
+    }
+
+    private List<Product> firstPage(Comparator<Product> order, Pageable page) {
+        return catalog.stream().sorted(order.thenComparing(Product::getId)).limit(page.getPageSize()).toList();
+    }
+
+    private static List<Long> ids(List<ProductSnapshot> products) {
+        return products.stream().map(ProductSnapshot::id).toList();
+    }
+
+    private static ProductSnapshot product(Long id, String price, int ageInDays, boolean active) {
+        return new ProductSnapshot(id, "Product " + id, null, new BigDecimal(price), 10, null, active,
+                NOW.minusDays(ageInDays), null, Set.of(), List.of());
+    }
+
+    private static Product entity(long id) {
+        Product product = new Product("Product " + id, null, BigDecimal.valueOf(id), 10);
+        product.setId(id);
+        product.setActive(true);
+        product.setCreatedAt(NOW.minusDays(id));
+        return product;
+    }
+}
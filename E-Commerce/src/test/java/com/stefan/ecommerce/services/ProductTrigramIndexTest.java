@@ -0,0 +1,59 @@
+package com.stefan.ecommerce.services;
+
+import com.stefan.ecommerce.dto.ProductSnapshot;
+import com.stefan.ecommerce.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ProductTrigramIndexTest {
+
+    private ProductTrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductTrigramIndex(mock(ProductRepository.class));
+        index.index(product(1L, "Wireless Headphones", true));
+        index.index(product(2L, "Headphone Stand", true));
+        index.index(product(3L, "Yoga Mat", true));
+    }
+
+    @Test
+    void testMisspelledQueryFindsSimilarNames() {
+        assertEquals(List.of(1L, 2L), index.search("headphnes"));
+        assertEquals(List.of(1L), index.search("wirless headphnes"));
+    }
+
+    @Test
+    void testDissimilarQueryMatchesNothing() {
+        assertTrue(index.search("keyboard").isEmpty());
+        assertTrue(index.search("  ").isEmpty());
+    }
+
+    @Test
+    void testUpdatesAndDeactivationAreApplied() {
+        index.index(product(3L, "Yoga Block", true));
+        assertTrue(index.search("mat").isEmpty());
+        assertEquals(List.of(3L), index.search("blok"));
+
+        index.index(product(1L, "Wireless Headphones", false));
+        assertEquals(List.of(2L), index.search("headphnes"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testTrigramsArePaddedLikePgTrgm() {
+        assertEquals(Set.of("  c", " ca", "cat", "at "), ProductTrigramIndex.trigrams("cat"));
+    }
+
+    private static ProductSnapshot product(Long id, String name, boolean active) {
+        return new ProductSnapshot(id, name, null, BigDecimal.TEN, 10, null, active,
+                null, null, Set.of(), List.of());
+    }
+}
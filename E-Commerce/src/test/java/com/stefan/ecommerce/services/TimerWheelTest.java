@@ -0,0 +1,62 @@
+package com.stefan.ecommerce.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    private static final long START = 1_000_000;
+
+    private final TimerWheel<String> wheel = new TimerWheel<>(Duration.ofSeconds(1), 8, START);
+
+    @Test
+    void testKeysFireOnceTheirDeadlinePasses() {
+        wheel.schedule("a", START + 2_500);
+        wheel.schedule("b", START + 4_000);
+
+        assertTrue(wheel.advance(START + 2_000).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(START + 3_000));
+        assertEquals(List.of("b"), wheel.advance(START + 4_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testDeadlinesBeyondOneTurnWaitForTheirTurn() {
+        // Eight one-second buckets: this lands in the same bucket as START + 3s
+        wheel.schedule("late", START + 11_000);
+
+        assertTrue(wheel.advance(START + 8_000).isEmpty());
+        assertEquals(List.of("late"), wheel.advance(START + 11_000));
+    }
+
+    @Test
+    void testCancelledAndRescheduledKeys() {
+        wheel.schedule("cancelled", START + 1_000);
+        wheel.schedule("moved", START + 1_000);
+        assertTrue(wheel.cancel("cancelled"));
+        wheel.schedule("moved", START + 5_000);
+
+        assertTrue(wheel.advance(START + 2_000).isEmpty());
+        assertEquals(List.of("moved"), wheel.advance(START + 5_000));
+    }
+
+    @Test
+    void testPassedDeadlinesFireOnTheNextTick() {
+        wheel.advance(START + 3_000);
+        wheel.schedule("overdue", START + 1_000);
+
+        assertEquals(List.of("overdue"), wheel.advance(START + 4_000));
+    }
+
+    @Test
+    void testLongPausesCatchUp() {
+        wheel.schedule("a", START + 1_000);
+        wheel.schedule("b", START + 30_000);
+
+        assertEquals(List.of("a", "b").size(), wheel.advance(START + 60_000).size());
+    }
+}